@@ -0,0 +1,181 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/* Hands every round to another recorder on a separate writer thread, so
+ * that formatting and writing the output does not hold up the simulation.
+ * Rounds go through a ring of records that are allocated once: the
+ * simulation thread copies each round into the next free record, and the
+ * writer thread writes every round that is waiting in one go before
+ * marking them free again.  There is one simulation thread and one writer
+ * thread per recorder, so the ring needs no locks, only the two counters.
+ *
+ * When the ring is full the simulation thread either waits for the writer
+ * (BLOCK) or throws the round away and counts it (DROP).  toString gives
+ * the highest number of rounds that were waiting, the time the
+ * simulation spent waiting and the number of rounds dropped.
+ */
+
+public class AsyncRoundRecorder implements RoundRecorder {
+
+	// What to do with a round when the ring is full
+	public static final int BLOCK = 0, DROP = 1;
+
+	// How long each thread sleeps while it waits for the other
+	private static final long WAIT_NANOS = 50000;
+
+	private final RoundRecorder recorder;	// Does the actual writing
+	private final BlackjackRoundRecord[] ring;
+	private final int mask;		// ring.length - 1, a power of two
+	private final int whenFull;	// BLOCK or DROP
+	private final Thread writer;
+
+	// Rounds put into the ring, and rounds written, since the start.  The
+	// ring holds the rounds from written to queued - 1
+	private final AtomicLong queued = new AtomicLong();
+	private final AtomicLong written = new AtomicLong();
+	private volatile boolean closing = false;
+	private volatile IOException writeError = null;
+
+	// Time the writer thread has spent writing; only changed by it
+	private volatile long writeNanos = 0;
+
+	// Reporting; only changed by the simulation thread
+	private long highWaterMark = 0;
+	private long stallNanos = 0;
+	private long dropped = 0;
+
+	public AsyncRoundRecorder(RoundRecorder recorder, int queueSize,
+			int whenFull) {
+		// The ring holds queueSize rounds, rounded up to a power of two
+		this.recorder = recorder;
+		this.whenFull = whenFull;
+		int size = Integer.highestOneBit(Math.max(queueSize - 1, 1)) << 1;
+		ring = new BlackjackRoundRecord[size];
+		for (int i = 0; i < size; i++) {
+			ring[i] = new BlackjackRoundRecord(0, 0, 0, 0);
+		}
+		mask = size - 1;
+		writer = new Thread(new Runnable() {
+			public void run() {
+				writeRounds();
+			}
+		}, "Round writer");
+		// The program can end even if the recorder is never closed
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	public void record(BlackjackRoundRecord roundRecord) throws IOException {
+		// Copy the round into the ring for the writer thread
+		if (writeError != null) {
+			throw writeError;
+		}
+		long next = queued.get();
+		if (next - written.get() > mask) {
+			// The ring is full
+			if (whenFull == DROP) {
+				dropped++;
+				return;
+			}
+			long start = System.nanoTime();
+			while (next - written.get() > mask) {
+				if (writeError != null) {
+					throw writeError;
+				}
+				LockSupport.unpark(writer);
+				LockSupport.parkNanos(WAIT_NANOS);
+			}
+			stallNanos += System.nanoTime() - start;
+		}
+		ring[(int) next & mask].copyFrom(roundRecord);
+		// Publish the round; the writer sees the copied record once it
+		// sees the new count
+		queued.lazySet(next + 1);
+		long waiting = next + 1 - written.get();
+		if (waiting > highWaterMark) {
+			highWaterMark = waiting;
+		}
+	}
+
+	private void writeRounds() {
+		// The writer thread: write whatever is in the ring, and sleep 
+		// briefly when it is empty
+		long next = written.get();
+		try {
+			while (true) {
+				long end = queued.get();
+				if (next == end) {
+					if (closing && next == queued.get()) {
+						return;
+					}
+					LockSupport.parkNanos(WAIT_NANOS);
+					continue;
+				}
+				// Write the whole batch, then free its records together
+				long start = System.nanoTime();
+				for (; next < end; next++) {
+					recorder.record(ring[(int) next & mask]);
+				}
+				written.lazySet(next);
+				writeNanos += System.nanoTime() - start;
+			}
+		} catch (IOException e) {
+			writeError = e;
+		} catch (Throwable e) {
+			// Any other failure must also reach the simulation thread, or
+			// it would wait for this thread forever
+			writeError = new IOException("Round writer failed", e);
+		}
+	}
+
+	public void close() throws IOException {
+		// Let the writer finish every round in the ring, then close the
+		// recorder it writes to
+		closing = true;
+		LockSupport.unpark(writer);
+		try {
+			writer.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while writing rounds", e);
+		} finally {
+			recorder.close();
+		}
+		if (writeError != null) {
+			throw writeError;
+		}
+	}
+
+	public long getQueueDepth() {
+		// Rounds waiting to be written; can be read from any thread
+		return queued.get() - written.get();
+	}
+
+	public long getWriteNanos() {
+		// Time spent writing so far; can be read from any thread
+		return writeNanos;
+	}
+
+	public long getHighWaterMark() {
+		return highWaterMark;
+	}
+
+	public long getStallNanos() {
+		return stallNanos;
+	}
+
+	public long getDropped() {
+		return dropped;
+	}
+
+	public String toString() {
+		// Summary for the end of the run
+		return "Output queue: at most " + highWaterMark + " of " +
+				ring.length + " rounds waiting, simulation waited " +
+				(stallNanos / 1000000) + " ms, " + dropped + 
+				" rounds dropped";
+	}
+}
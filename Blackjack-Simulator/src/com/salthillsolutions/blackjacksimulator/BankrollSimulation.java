@@ -0,0 +1,212 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* Follows many bankrolls at once, to show the spread of results a player
+ * with a given bankroll can expect, rather than only the long-run total.
+ * Each bankroll (a trajectory) starts at BANKROLL and plays rounds until
+ * it is ruined (less than one bet unit left), reaches BANKROLL_TARGET, or
+ * has played SESSION_ROUNDS rounds.
+ *
+ * The BANKROLL_TRAJECTORIES are shared between THREADS SimulationEngines,
+ * each playing its trajectories one after another; when a trajectory
+ * ends, the next one starts, carrying on with the same shoe.  No path is
+ * kept: the final bankroll, the largest drawdown (fall from the highest
+ * point so far) and the rounds played of each trajectory go into
+ * QuantileSketches, which are merged at the end with the counts and
+ * statistics of every thread.
+ */
+
+public class BankrollSimulation implements Callable<BankrollSimulation> {
+
+	// Quantiles shown in the report
+	private static final double[] QUANTILES =
+		{ 0.01, 0.05, 0.25, 0.5, 0.75, 0.95, 0.99 };
+
+	private final int trajectories;
+	private final int stream;
+	private final long bankroll, target;
+	private final int sessionRounds;
+	private final SimulationMetrics metrics;	// null for none
+
+	// The results of the finished trajectories
+	private long finished = 0, ruined = 0, reachedTarget = 0;
+	private final QuantileSketch finalBankroll = new QuantileSketch();
+	private final QuantileSketch maxDrawdown = new QuantileSketch();
+	private final QuantileSketch roundsPlayed = new QuantileSketch();
+	private final QuantileSketch roundsToRuin = new QuantileSketch();
+	private final BlackjackStats stats = new BlackjackStats();
+
+	public BankrollSimulation(int trajectories, int stream,
+			long bankroll, long target, int sessionRounds,
+			SimulationMetrics metrics) {
+		// Play the given number of trajectories, shuffling with the given
+		// stream of random numbers
+		this.trajectories = trajectories;
+		this.stream = stream;
+		this.bankroll = bankroll;
+		this.target = target;
+		this.sessionRounds = sessionRounds;
+		this.metrics = metrics;
+	}
+
+	public static void run(int threads, SimulationMetrics metrics) {
+		// Share the BANKROLL_TRAJECTORIES between the given number of
+		// threads, wait for them all, then print the combined report.
+		// metrics may be null.
+		int total = Settings.BANKROLL_TRAJECTORIES;
+		threads = Math.max(1, Math.min(threads, total));
+		System.out.println("Playing " + total + " bankrolls of " +
+				Settings.BANKROLL + " on " + threads + " threads");
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<BankrollSimulation>> parts =
+				new ArrayList<Future<BankrollSimulation>>();
+		for (int i = 0; i < threads; i++) {
+			int trajectories = (int) ((long) total * (i+1) / threads -
+					(long) total * i / threads);
+			parts.add(pool.submit(new BankrollSimulation(trajectories, i,
+					Settings.BANKROLL, Settings.BANKROLL_TARGET,
+					Settings.SESSION_ROUNDS, metrics)));
+		}
+		pool.shutdown();
+
+		BankrollSimulation results = new BankrollSimulation(0, 0,
+				Settings.BANKROLL, Settings.BANKROLL_TARGET,
+				Settings.SESSION_ROUNDS, null);
+		for (Future<BankrollSimulation> part : parts) {
+			try {
+				results.merge(part.get());
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) { e.printStackTrace(); }
+		}
+		System.out.print("Finished! ");
+		System.out.println(results);
+	}
+
+	public BankrollSimulation call() {
+		// Play every trajectory of this part, one after another
+		SimulationEngine engine = new SimulationEngine(new BlackjackRules(),
+				StrategyChart.getDefault(), RoundRecorder.NONE,
+				DeckRandom.fromSettings(stream));
+		engine.setMetrics((metrics != null) ? metrics.addEngine() : null);
+		long betUnit = engine.getRules().getBetUnit();
+		for (int t = 0; t < trajectories; t++) {
+			long money = bankroll, peak = bankroll, drawdown = 0;
+			int rounds = 0;
+			while (true) {
+				money += engine.playRound();
+				rounds++;
+				if (money > peak) {
+					peak = money;
+				} else if (peak - money > drawdown) {
+					drawdown = peak - money;
+				}
+				boolean ruin = money < betUnit;
+				boolean reached = target > 0 && money >= target;
+				if (ruin || reached || rounds == sessionRounds) {
+					finish(money, drawdown, rounds, ruin, reached);
+					break;
+				}
+			}
+		}
+		engine.publish();
+		stats.merge(engine.getStats());
+		return this;
+	}
+
+	private void finish(long money, long drawdown, int rounds,
+			boolean ruin, boolean reached) {
+		// Count a finished trajectory
+		finished++;
+		finalBankroll.add(money);
+		maxDrawdown.add(drawdown);
+		roundsPlayed.add(rounds);
+		if (ruin) {
+			ruined++;
+			roundsToRuin.add(rounds);
+		}
+		if (reached) {
+			reachedTarget++;
+		}
+	}
+
+	public void merge(BankrollSimulation other) {
+		// Add the results of another part
+		finished += other.finished;
+		ruined += other.ruined;
+		reachedTarget += other.reachedTarget;
+		finalBankroll.merge(other.finalBankroll);
+		maxDrawdown.merge(other.maxDrawdown);
+		roundsPlayed.merge(other.roundsPlayed);
+		roundsToRuin.merge(other.roundsToRuin);
+		stats.merge(other.stats);
+	}
+
+	public long getRuined() {
+		return ruined;
+	}
+
+	public long getFinished() {
+		return finished;
+	}
+
+	public String toString() {
+		// The report: how many trajectories were ruined or reached the
+		// target (with a confidence interval of CONFIDENCE_Z standard
+		// errors), N0, then the quantiles of each sketch
+		StringBuilder report = new StringBuilder();
+		report.append(String.format("%,d bankrolls of %,d, target %s, " +
+				"up to %,d rounds each%n", finished, bankroll,
+				(target > 0) ? String.format("%,d", target) : "none",
+				sessionRounds));
+		double ruin = (finished > 0) ? (double) ruined / finished : 0;
+		double ruinError = (finished > 0) ?
+				Math.sqrt(ruin * (1 - ruin) / finished) : 0;
+		double reach = (finished > 0) ?
+				(double) reachedTarget / finished : 0;
+		report.append(String.format("Risk of ruin: %.2f%% +/- %.2f%%  " +
+				"Reached target: %.2f%%%n", 100 * ruin,
+				100 * Settings.CONFIDENCE_Z * ruinError, 100 * reach));
+		// N0: the rounds after which the expected winnings equal one
+		// standard deviation of the winnings
+		double mean = stats.getMeanWinnings();
+		report.append(String.format("N0: %,.0f rounds (EV %.3f, SD %.2f " +
+				"per round, over %,d rounds)%n", (mean != 0) ?
+				stats.getVariance() / (mean * mean) :
+				Double.POSITIVE_INFINITY, mean,
+				Math.sqrt(stats.getVariance()), stats.getRounds()));
+
+		report.append(String.format("%-16s", "Quantile"));
+		for (double q : QUANTILES) {
+			report.append(String.format(" %10.0f%%", 100 * q));
+		}
+		report.append(String.format("%n"));
+		appendQuantiles(report, "Final bankroll", finalBankroll);
+		appendQuantiles(report, "Max drawdown", maxDrawdown);
+		appendQuantiles(report, "Rounds played", roundsPlayed);
+		if (ruined > 0) {
+			appendQuantiles(report, "Rounds to ruin", roundsToRuin);
+		}
+		return report.toString();
+	}
+
+	private static void appendQuantiles(StringBuilder report, String name,
+			QuantileSketch sketch) {
+		report.append(String.format("%-16s", name));
+		for (double q : QUANTILES) {
+			report.append(String.format(" %,11.0f", sketch.quantile(q)));
+		}
+		report.append(String.format("%n"));
+	}
+
+}
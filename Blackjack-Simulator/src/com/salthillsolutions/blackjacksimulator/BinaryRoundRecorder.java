@@ -0,0 +1,90 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/* Writes each round to a compact binary file, a fraction of the size of
+ * the CSV file.  The file starts with a header that describes the rules
+ * and settings of the run:
+ *   "BJRR", version (short), number of decks, cut card percentage,
+ *   bet unit, hands per round (ints), seed (long, the seed the run used,
+ *   see DeckRandom.getSeed), random generator (UTF), flags (byte, from
+ *   version 2)
+ * followed by one record per round, in the layout of
+ * BlackjackRoundRecord.writeBinary.  All numbers are big-endian.
+ * With the DELTA flag, the round number, shuffle number and cards left
+ * of each round are written as the difference from the round before.
+ * RoundRecordReader reads the file back, and RoundRecordConverter turns it
+ * into the usual CSV file.
+ */
+
+public class BinaryRoundRecorder implements RoundRecorder {
+
+	// The first bytes of every file, and the version of the layout
+	public static final int MAGIC = 0x424A5252;	// "BJRR"
+	public static final int VERSION = 2;
+
+	// Flags in the header
+	public static final int DELTA = 1;
+
+	private final DataOutputStream out;
+	private final boolean delta;
+
+	// Values of the last round written, for delta encoding
+	private int lastRoundNum = 0, lastShuffleNum = 0, lastCardsLeft = 0;
+
+	public BinaryRoundRecorder(String file, BlackjackRules rules) 
+			throws IOException {
+		// Note that the file is overwritten
+		this(new FileOutputStream(file), rules, false);
+	}
+
+	public BinaryRoundRecorder(OutputStream out, BlackjackRules rules,
+			boolean delta) throws IOException {
+		// A file of rounds played in this run
+		this(out, rules, delta, DeckRandom.getSeed(), 
+				Settings.RANDOM_GENERATOR);
+	}
+
+	public BinaryRoundRecorder(OutputStream out, BlackjackRules rules,
+			boolean delta, long seed, String randomGenerator) 
+			throws IOException {
+		// A file of rounds played with the given seed and generator, such
+		// as rounds copied from another file
+		this.out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+		this.delta = delta;
+		writeHeader(rules, seed, randomGenerator);
+	}
+
+	private void writeHeader(BlackjackRules rules, long seed, 
+			String randomGenerator) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeShort(VERSION);
+		out.writeInt(rules.getNumberOfDecks());
+		out.writeInt(rules.getCutCardPercentage());
+		out.writeInt(rules.getBetUnit());
+		out.writeInt(rules.getHandsPerRound());
+		out.writeLong(seed);
+		out.writeUTF(randomGenerator);
+		out.writeByte(delta ? DELTA : 0);
+	}
+
+	public void record(BlackjackRoundRecord roundRecord) throws IOException {
+		if (delta) {
+			roundRecord.writeBinary(out, lastRoundNum, lastShuffleNum, 
+					lastCardsLeft);
+			lastRoundNum = roundRecord.getRoundNum();
+			lastShuffleNum = roundRecord.getShuffleNum();
+			lastCardsLeft = roundRecord.getCardsLeft();
+		} else {
+			roundRecord.writeBinary(out);
+		}
+	}
+
+	public void close() throws IOException {
+		out.close();
+	}
+}
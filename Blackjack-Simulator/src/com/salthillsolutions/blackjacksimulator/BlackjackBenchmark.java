@@ -0,0 +1,237 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+
+/* Timings of the parts of the simulator that are on the hot path.  Run
+ * with the name of a benchmark as argument, or with no argument to run
+ * them all.  Each benchmark is run a few times so that the JIT compiler
+ * has warmed up before the last (reported) run.
+ *   strategy - StrategyChart.playerMove against BlackjackStrategy.playerMove
+ *   random   - shuffles per second with each DeckRandom generator
+ *   output   - rounds per second and MB/s writing 10^7 rounds of CSV with
+ *              each output sink, against the former BufferedWriter path
+ *   alloc    - bytes allocated per round by SimulationEngine.playRounds
+ *              when nothing is recorded, from the chart (which should be
+ *              0) and with optimal play
+ */
+
+public class BlackjackBenchmark {
+
+	private static final int RUNS = 5;
+
+	public static void main(String [ ] args) {
+		String which = (args.length > 0) ? args[0] : "all";
+		if (which.equals("all") || which.equals("strategy")) {
+			strategy();
+		}
+		if (which.equals("all") || which.equals("random")) {
+			random();
+		}
+		if (which.equals("all") || which.equals("output")) {
+			output();
+		}
+		if (which.equals("all") || which.equals("alloc")) {
+			alloc();
+		}
+	}
+
+	private static void alloc() {
+		// Count the bytes this thread allocates while an engine plays
+		// rounds without recording them.  The engine reuses its hands,
+		// and the stats reuse the copy they publish, so after the first
+		// runs nothing should be allocated.  With optimal play, only the
+		// misses of the dealer odds cache should allocate (a new entry).
+		if (!(ManagementFactory.getThreadMXBean() instanceof
+				com.sun.management.ThreadMXBean)) {
+			System.out.println("alloc: this JVM cannot count allocations");
+			return;
+		}
+		SimulationEngine engine = new SimulationEngine(new BlackjackRules(),
+				StrategyChart.getDefault(), RoundRecorder.NONE,
+				DeckRandom.create("xoshiro", 12345));
+		allocatedBytes("chart", engine, 10000000);
+		engine = new SimulationEngine(new BlackjackRules(),
+				StrategyChart.getDefault(), RoundRecorder.NONE,
+				DeckRandom.create("xoshiro", 12345));
+		engine.setOptimalPlay(new OptimalPlay());
+		allocatedBytes("optimal", engine, 100000);
+	}
+
+	private static void allocatedBytes(String name, SimulationEngine engine,
+			int rounds) {
+		// Print the bytes allocated by the last of RUNS runs of rounds
+		com.sun.management.ThreadMXBean threads = 
+				(com.sun.management.ThreadMXBean) 
+				ManagementFactory.getThreadMXBean();
+		long thread = Thread.currentThread().getId();
+		long bytes = 0;
+		for (int run = 0; run < RUNS; run++) {
+			long before = threads.getThreadAllocatedBytes(thread);
+			try {
+				engine.playRounds(0, rounds, false);
+			} catch (IOException e) { e.printStackTrace(); }
+			bytes = threads.getThreadAllocatedBytes(thread) - before;
+		}
+		System.out.printf("alloc: %-8s %,12d bytes over %,d rounds, " +
+				"%.4f bytes/round%n", name, bytes, rounds,
+				(double) bytes / rounds);
+	}
+
+	private static void output() {
+		// Play the same rounds with each way of writing the CSV file.  The
+		// "encode only" run throws the bytes away, to show the cost of
+		// playing and encoding without any writing.  Each sink first
+		// writes a short warm-up file.
+		String[] sinks = { "encode only", "writer", "stream", "channel",
+				"mapped" };
+		String file = System.getProperty("user.dir") + "/benchmark-output.csv";
+		for (String sink : sinks) {
+			try {
+				writeRounds(sink, file, 1000000);
+				long start = System.nanoTime();
+				int rounds = 10000000;
+				writeRounds(sink, file, rounds);
+				double seconds = (System.nanoTime() - start) / 1e9;
+				long bytes = new File(file).length();
+				System.out.printf("output: %-11s %,10.0f rounds/s, " +
+						"%7.1f MB/s, %,d bytes%n", sink, rounds / seconds,
+						bytes / seconds / 1e6, bytes);
+			} catch (IOException e) { e.printStackTrace(); }
+		}
+		new File(file).delete();
+	}
+
+	private static void writeRounds(String sink, String file, int rounds)
+			throws IOException {
+		// Play rounds with a fixed seed, written to file through one sink
+		RoundRecorder recorder;
+		if (sink.equals("writer")) {
+			// The way rounds were written before: a String per round,
+			// through a BufferedWriter
+			final Writer csvWriter = new BufferedWriter(new FileWriter(file));
+			recorder = new RoundRecorder() {
+				public void record(BlackjackRoundRecord roundRecord) 
+						throws IOException {
+					csvWriter.write(roundRecord.csvRound(false));
+				}
+				public void close() throws IOException {
+					csvWriter.close();
+				}
+			};
+		} else {
+			OutputStream out;
+			if (sink.equals("encode only")) {
+				new FileOutputStream(file).close();
+				out = new OutputStream() {
+					public void write(int b) { }
+					public void write(byte[] b, int offset, int length) { }
+				};
+			} else if (sink.equals("stream")) {
+				out = new FileOutputStream(file);
+			} else {
+				out = new ChannelOutputSink(file, sink.equals("mapped"));
+			}
+			recorder = new CsvRoundRecorder(out, false);
+		}
+		SimulationEngine engine = new SimulationEngine(new BlackjackRules(),
+				StrategyChart.getDefault(), recorder, 
+				DeckRandom.create("xoshiro", 12345));
+		engine.run(rounds);
+		engine.close();
+	}
+
+	private static void random() {
+		// Time full shuffles of a deck of NUMBER_OF_DECKS decks with
+		// each generator
+		String[] generators = { "math", "splittable", "xoshiro" };
+		int shuffles = 200000;
+		for (String name : generators) {
+			Deck deck = new Deck(Settings.NUMBER_OF_DECKS,
+					DeckRandom.create(name, 12345));
+			double seconds = 0;
+			for (int run = 0; run < RUNS; run++) {
+				long start = System.nanoTime();
+				for (int i = 0; i < shuffles; i++) {
+					deck.shuffle();
+				}
+				seconds = (System.nanoTime() - start) / 1e9;
+			}
+			System.out.printf("random: %-10s %,12.0f shuffles/s, " +
+					"%6.2f ns/card%n", name, shuffles / seconds, 
+					seconds * 1e9 / shuffles / (52 * Settings.NUMBER_OF_DECKS));
+		}
+	}
+
+	private static void strategy() {
+		// Deal a set of random player hands that still need a decision,
+		// then time both strategies over the same hands
+		int situations = 1 << 16;
+		BlackjackHand[] hands = new BlackjackHand[situations];
+		int[] upCards = new int[situations];
+		Deck deck = new Deck();
+		deck.shuffle();
+		for (int i = 0; i < situations; i++) {
+			if (deck.cardsLeft() < 20) {
+				deck.shuffle();
+			}
+			hands[i] = new BlackjackHand(Settings.BET_UNIT);
+			do {
+				hands[i].clear();
+				hands[i].addCard(deck.dealCode());
+				hands[i].addCard(deck.dealCode());
+				// About a third of the hands get a third card
+				if (i % 3 == 0 && hands[i].getBlackjackScore() < 21) {
+					hands[i].addCard(deck.dealCode());
+				}
+			} while (hands[i].getBlackjackScore() >= 21);
+			upCards[i] = Card.codeBlackjackValue(deck.dealCode());
+		}
+
+		// Both strategies should give the same move in every situation
+		StrategyChart chart = StrategyChart.getDefault();
+		int differences = 0;
+		for (int i = 0; i < situations; i++) {
+			if (chart.playerMove(hands[i], upCards[i]) != BlackjackStrategy
+					.playerMove(hands[i], Card.fromCode(Card.code(upCards[i] 
+					== 11 ? 1 : upCards[i], 0)))) {
+				differences++;
+			}
+		}
+		System.out.println("strategy: " + differences + " differences in " +
+				situations + " situations");
+
+		int loops = 200;
+		double switchTime = 0, chartTime = 0;
+		long check = 0;
+		for (int run = 0; run < RUNS; run++) {
+			long start = System.nanoTime();
+			for (int loop = 0; loop < loops; loop++) {
+				for (int i = 0; i < situations; i++) {
+					check += BlackjackStrategy.playerMove(hands[i],
+							Card.fromCode(Card.code(upCards[i] == 11 ? 1 : 
+							upCards[i], 0)));
+				}
+			}
+			switchTime = (System.nanoTime() - start) / 
+					((double) loops * situations);
+			start = System.nanoTime();
+			for (int loop = 0; loop < loops; loop++) {
+				for (int i = 0; i < situations; i++) {
+					check += chart.playerMove(hands[i], upCards[i]);
+				}
+			}
+			chartTime = (System.nanoTime() - start) / 
+					((double) loops * situations);
+		}
+		System.out.printf("strategy: switch %.2f ns/decision, " +
+				"chart %.2f ns/decision (check %d)%n", switchTime, chartTime,
+				check);
+	}
+}
@@ -1,6 +1,9 @@
 package com.salthillsolutions.blackjacksimulator;
 
 /* These methods are specific for blackjack hands.
+ * The hard total (every ace counted as 1) and the number of aces are 
+ * updated as cards are added or removed, so the score and the soft
+ * status of the hand are worked out without going through the cards.
  */
 
 public class BlackjackHand extends Hand {
@@ -17,6 +20,10 @@ public class BlackjackHand extends Hand {
 	// True if insurance was taken on the hand
 	private boolean insuranceFlag = false;
 	
+	// Total of the cards with every ace counted as 1, and number of aces
+	private int hardTotal = 0;
+	private int aces = 0;
+	
 	
 	public int getBet() {
 		return bet;
@@ -57,35 +64,70 @@ public class BlackjackHand extends Hand {
 		this.bet = bet;
 	}
 
+	public void reset(int bet) {
+		// Put the hand back in the state of a new BlackjackHand, so that
+		// it can be reused for another round.
+		// No cards, bet as given, all flags false
+		this.clear();
+		this.bet = bet;
+		this.doubleFlag = false;
+		this.splitFlag = false;
+		this.insuranceFlag = false;
+	}
+
+	public void clear() {
+		// Discard all the cards, and the totals with them
+		super.clear();
+		hardTotal = 0;
+		aces = 0;
+	}
+	
+	public void addCard(int code) {
+		// Add the card, and add its points to the totals
+		super.addCard(code);
+		addToTotals(code, 1);
+	}
+	
+	public void removeCard(int position) {
+		// Remove the card, and take its points off the totals
+		if (position >= 0 && position < cardCount) {
+			addToTotals(hand[position], -1);
+			super.removeCard(position);
+		}
+	}
+	
+	private void addToTotals(int code, int sign) {
+		// Add (sign = 1) or remove (sign = -1) one card from the totals
+		if (Card.codeValue(code) == 1) {
+			aces += sign;
+			hardTotal += sign;
+		} else {
+			hardTotal += sign * Card.codeBlackjackValue(code);
+		}
+	}
+
 	public int getBlackjackScore() {
 		// Calculate the blackjack score of the hand.
-		int score = 0, aces = 0;
-		
-		// Cycle through all cards and add their score
-		for (Card card : hand) {
-			if (card.getValue() == 1) { 
-				aces++;	// Keep track of aces, in case score > 21
-			}
-			score += card.getBlackjackValue();
-		}
-		
-		// If the score is over 21 and there are aces,
-		// change the value of an ace from 11 to 1 (subtract 10 from score)
-		while (score > 21 && aces > 0) {
-			aces--;
-			score -= 10;
+		// One ace can count as 11 (add 10 to the hard total) if that
+		// does not take the score over 21; two aces at 11 always would.
+		if (isSoft()) {
+			return hardTotal + 10;
 		}
-		
-		// Return the int of the score
-		return score;
+		return hardTotal;
+	}
+	
+	public boolean isSoft() {
+		// True if the hand has an ace that is counted as 11
+		return aces > 0 && hardTotal <= 11;
+	}
+	
+	public int getHardTotal() {
+		// The total of the hand with every ace counted as 1
+		return hardTotal;
 	}
 
 	public boolean getSoft17() {
 		// Verify if a two-card hand is a soft 17 (with an ace)
-		if (hand.size() == 2 && getBlackjackScore() == 17 && isValue(1)) {
-			return true;
-		} else {
-			return false;
-		}
+		return cardCount == 2 && hardTotal == 7 && aces > 0;
 	}
 }
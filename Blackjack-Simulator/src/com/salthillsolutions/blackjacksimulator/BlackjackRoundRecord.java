@@ -1,37 +1,78 @@
 package com.salthillsolutions.blackjacksimulator;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /* Data is collected for each round.  The BlackjackSimulator then
  * writes the information from an object of this class into a CSV
  * file, which can be read by the user after the simulation is finished. 
+ * The same information can also be written in a compact binary form
+ * (see writeBinary), and read back from it into a record.
  */
 
 public class BlackjackRoundRecord {
 
+	// Outcome codes of a hand, kept as bits of one int: the result in the
+	// lowest two bits, then one bit for each modifier.  See outcomeMods
+	// for the matching letters.
+	public static final int WIN = 0, LOSS = 1, PUSH = 2, RESULT_MASK = 3;
+	public static final int BLACKJACK = 4, INSURED = 8, DOUBLED = 16,
+			SPLIT = 32;
+	
+	// Card values as one character, for values 1 to 13 (10 = "T")
+	private static final String VALUE_CHARS = "?A23456789TJQK";
+	
+	// For each outcome code: the playerMods letters, and the multipliers
+	// of the bet from getWinnings and getTotalBet, worked out once so that
+	// recording a hand needs no Strings
+	private static final String[] OUTCOME_MODS = new String[64];
+	private static final float[] WINNINGS = new float[64];
+	private static final float[] TOTAL_BETS = new float[64];
+	
+	static {
+		for (int code = 0; code < 64; code++) {
+			OUTCOME_MODS[code] = outcomeMods(code);
+			WINNINGS[code] = getWinnings(OUTCOME_MODS[code]);
+			TOTAL_BETS[code] = getTotalBet(OUTCOME_MODS[code]);
+		}
+	}
+	
 	private int roundNum;		// Round number
 	private int shuffleNum;		// Increments by one when deck is shuffled
 	private int cardsLeft;		// Cards left in the deck
 	private int deckCount;		// Card count at the beginning of the round
 	private int handsInRound;	// 1, unless the hand is split
 	
-	// The playerCards, playerScores, playerMods, playerWinnings members
-	// are Strings since the information is split by hand with "/" after
-	// each hand, including the last (or only) hand
-	private String playerCards;	// Each card of the player's hand (no suits)
-	private String dealerCards; // Each card of the dealer's hand (no suits)
-	private String playerScores;
-	private String dealerScore;
-	// For playerMods: W=win, L=loss, P=push, S=split, D=double, B=blackjack
-	private String playerMods;	
-	private String playerWinnings;
-	private String playerBets;
+	// The player fields have one entry per hand.  The cards of all hands
+	// are kept one after the other in playerCards, as values 1 to 13
+	// (suits are irrelevant); hand h has cardCounts[h] cards, starting at
+	// cardStarts[h].  The arrays grow if a round has more hands or cards.
+	private byte[] playerCards = new byte[16];
+	private int[] cardStarts = new int[4];
+	private int[] cardCounts = new int[4];
+	private int[] playerScores = new int[4];
+	// For playerOutcomes: see WIN, LOSS, PUSH and the modifier bits
+	private int[] playerOutcomes = new int[4];
+	private int[] playerWinnings = new int[4];
+	private int[] playerBets = new int[4];
+	private byte[] dealerCards = new byte[12];
+	private int dealerCardCount;
+	private int dealerScore;
 	
 	public BlackjackRoundRecord (int roundNum, int shuffleNum, int cardsLeft, 
 			int deckCount ) {
 		// Preliminary information that is captured as the object
 		// is created, before the round starts
-
+		startRound(roundNum, shuffleNum, cardsLeft, deckCount);
+	}
+	
+	public void startRound (int roundNum, int shuffleNum, int cardsLeft, 
+			int deckCount ) {
+		// Preliminary information that is captured before the round starts.
+		// This lets one record be reused for every round.
+		
 		// These values are straight ints
 		this.roundNum = roundNum+1;	// Make sure the first round is #1
 		this.shuffleNum = shuffleNum;
@@ -39,102 +80,218 @@ public class BlackjackRoundRecord {
 		this.deckCount = deckCount;
 	}
 	
+	public void renumber (int roundNum, int shuffleNum) {
+		// Give the record new round and deck numbers, as they are to 
+		// appear in the output (used when files are merged)
+		this.roundNum = roundNum;
+		this.shuffleNum = shuffleNum;
+	}
+	
 	public void processRoundResults (ArrayList<BlackjackHand> playerHands, 
 			BlackjackHand dealerHand ) {
 		// This information is captured after the round is played
 		
 		// Record the number of hands played in this round
-		this.handsInRound = playerHands.size();
-		
-		// Initialize the fields that will collect information from each hand
-		String cardList = "", scoreList = "", modList = "", 
-				winningsList = "", betList = "";
+		startHands(playerHands.size());
 		
-		// Go through this loop for each player hand.  Each hand ends with
-		// a "/" divider, even if only a single hand was played
-		for (BlackjackHand hand : playerHands) {
-			// Get the value of each card played as one character (10 = "T")
-			// Suits are ignored since they are irrelevant
-			for (int i = 0; i < hand.getCardCount(); i++ ) {
-				Card card = hand.getCard(i);
-				cardList = cardList + card.getValueAsOneChar();
+		// Go through this loop for each player hand
+		int cardNum = 0;
+		for (int h = 0; h < handsInRound; h++) {
+			BlackjackHand hand = playerHands.get(h);
+			// Get the value of each card played.  Suits are ignored
+			// since they are irrelevant
+			int count = hand.getCardCount();
+			if (cardNum + count > playerCards.length) {
+				playerCards = grow(playerCards, cardNum + count);
+			}
+			cardStarts[h] = cardNum;
+			cardCounts[h] = count;
+			for (int i = 0; i < count; i++ ) {
+				playerCards[cardNum++] = (byte) hand.getCardValue(i);
 			}
-			cardList = cardList + "/";
 			// Get the blackjack score of that hand
-			scoreList = scoreList + hand.getBlackjackScore() + "/";
-			// Generate the playerMods in a few steps.  First find 
+			playerScores[h] = hand.getBlackjackScore();
+			// Generate the outcome in a few steps.  First find
 			// whether the hand was a win/loss/push, and whether there
 			// was a blackjack
-			String handResult = handOutcome(hand.getBlackjackScore(), 
+			int outcome = handOutcomeCode(hand.getBlackjackScore(),
 					dealerHand.getBlackjackScore(), hand.getCardCount(),
 					dealerHand.getCardCount(), hand.isSplitFlag());
 			// Add flags if the hand was insured, doubled or split
 			// Insurance will only show up in the first hand, in case of
 			// a split
-			if (hand.isInsuranceFlag() && hand.equals(playerHands.get(0))) { 
-				handResult = handResult + "I"; }
-			if (hand.isDoubleFlag() ) { handResult = handResult + "D"; }
-			if (hand.isSplitFlag() ) { handResult = handResult + "S"; }
-			// Now add all of the mod info into the modList
-			modList = modList + handResult + "/";
+			if (hand.isInsuranceFlag() && h == 0) { outcome |= INSURED; }
+			if (hand.isDoubleFlag() ) { outcome |= DOUBLED; }
+			if (hand.isSplitFlag() ) { outcome |= SPLIT; }
+			playerOutcomes[h] = outcome;
 			// Find the total winnings for that hand
-			winningsList = winningsList + 
-					(int) (getWinnings(handResult)*hand.getBet()) + "/";
-			betList = betList + 
-					(int) (getTotalBet(handResult)*hand.getBet()) + "/";
-			
+			playerWinnings[h] = (int) (WINNINGS[outcome]*hand.getBet());
+			playerBets[h] = (int) (TOTAL_BETS[outcome]*hand.getBet());
 		}
-		// All player hands have been assessed; put into the fields
-		// for this round's object
-		this.playerCards = cardList;
-		this.playerScores = scoreList;
-		this.playerMods = modList;
-		this.playerWinnings = winningsList;
-		this.playerBets = betList;
 		
-		// For the dealer, get the value of each card played
-		// as one character (10 = "T").  The only dealer modifier
-		// would be a blackjack, but that's already accounted for
-		// in the playerMods field
-		cardList = "";
-		for (int i = 0; i < dealerHand.getCardCount(); i++ ) {
-				Card card = dealerHand.getCard(i);
-				cardList = cardList + card.getValueAsOneChar();
+		// For the dealer, get the value of each card played.  The only
+		// dealer modifier would be a blackjack, but that's already
+		// accounted for in the player outcomes
+		dealerCardCount = dealerHand.getCardCount();
+		if (dealerCardCount > dealerCards.length) {
+			dealerCards = grow(dealerCards, dealerCardCount);
+		}
+		for (int i = 0; i < dealerCardCount; i++ ) {
+			dealerCards[i] = (byte) dealerHand.getCardValue(i);
+		}
+		dealerScore = dealerHand.getBlackjackScore();
+	}
+	
+	public void copyFrom(BlackjackRoundRecord other) {
+		// Make this record a copy of another one, reusing this record's
+		// arrays when they are big enough
+		roundNum = other.roundNum;
+		shuffleNum = other.shuffleNum;
+		cardsLeft = other.cardsLeft;
+		deckCount = other.deckCount;
+		startHands(other.handsInRound);
+		int cardNum = 0;
+		for (int h = 0; h < handsInRound; h++) {
+			cardStarts[h] = other.cardStarts[h];
+			cardCounts[h] = other.cardCounts[h];
+			playerScores[h] = other.playerScores[h];
+			playerOutcomes[h] = other.playerOutcomes[h];
+			playerWinnings[h] = other.playerWinnings[h];
+			playerBets[h] = other.playerBets[h];
+			cardNum = Math.max(cardNum, cardStarts[h] + cardCounts[h]);
+		}
+		if (cardNum > playerCards.length) {
+			playerCards = grow(playerCards, cardNum);
+		}
+		System.arraycopy(other.playerCards, 0, playerCards, 0, cardNum);
+		dealerCardCount = other.dealerCardCount;
+		if (dealerCardCount > dealerCards.length) {
+			dealerCards = grow(dealerCards, dealerCardCount);
 		}
-		// Update the dealer fields.  The score is also obtained.
-		// There is no "/" divider used, since we know the dealer
-		// can only have one hand per round
-		this.dealerCards = cardList;
-		this.dealerScore = String.valueOf(dealerHand.getBlackjackScore());
+		System.arraycopy(other.dealerCards, 0, dealerCards, 0, 
+				dealerCardCount);
+		dealerScore = other.dealerScore;
 	}
 	
-	public String handOutcome (int playerHand, int dealerHand, int playerCards,
-			int dealerCards, boolean splitFlag) {
+	private void startHands(int hands) {
+		// Make room for the given number of player hands
+		handsInRound = hands;
+		if (hands > cardStarts.length) {
+			int size = Math.max(hands, 2 * cardStarts.length);
+			cardStarts = new int[size];
+			cardCounts = new int[size];
+			playerScores = new int[size];
+			playerOutcomes = new int[size];
+			playerWinnings = new int[size];
+			playerBets = new int[size];
+		}
+	}
+	
+	private static byte[] grow(byte[] cards, int size) {
+		// A copy of cards with room for at least size cards
+		byte[] bigger = new byte[Math.max(size, 2 * cards.length)];
+		System.arraycopy(cards, 0, bigger, 0, cards.length);
+		return bigger;
+	}
+	
+	public int getRoundNum() {
+		return roundNum;
+	}
+	
+	public int getShuffleNum() {
+		return shuffleNum;
+	}
+	
+	public int getCardsLeft() {
+		return cardsLeft;
+	}
+	
+	public int getDeckCount() {
+		return deckCount;
+	}
+	
+	public int getHandsInRound() {
+		return handsInRound;
+	}
+	
+	public int getPlayerScore(int hand) {
+		return playerScores[hand];
+	}
+	
+	public int getPlayerOutcome(int hand) {
+		return playerOutcomes[hand];
+	}
+	
+	public int getPlayerWinnings(int hand) {
+		return playerWinnings[hand];
+	}
+	
+	public int getPlayerBet(int hand) {
+		return playerBets[hand];
+	}
+	
+	public int getDealerScore() {
+		return dealerScore;
+	}
+	
+	public static int outcomeCode(String handResult) {
+		// The outcome code for the letters of a playerMods field
+		int code = (handResult.charAt(0) == 'W') ? WIN :
+				(handResult.charAt(0) == 'L') ? LOSS : PUSH;
+		if (handResult.indexOf('B') > 0) { code |= BLACKJACK; }
+		if (handResult.indexOf('I') > 0) { code |= INSURED; }
+		if (handResult.indexOf('D') > 0) { code |= DOUBLED; }
+		if (handResult.indexOf('S') > 0) { code |= SPLIT; }
+		return code;
+	}
+	
+	public static String outcomeMods(int code) {
+		// The letters of the playerMods field for an outcome code:
+		// W=win, L=loss, P=push, then B=blackjack, I=insured, D=double,
+		// S=split
+		String mods = ((code & RESULT_MASK) == WIN) ? "W" :
+				((code & RESULT_MASK) == LOSS) ? "L" : "P";
+		if ((code & BLACKJACK) != 0) { mods = mods + "B"; }
+		if ((code & INSURED) != 0) { mods = mods + "I"; }
+		if ((code & DOUBLED) != 0) { mods = mods + "D"; }
+		if ((code & SPLIT) != 0) { mods = mods + "S"; }
+		return mods;
+	}
+	
+	public static String handOutcome (int playerHand, int dealerHand, 
+			int playerCards, int dealerCards, boolean splitFlag) {
 		// Determine whether the hand was a Win, Loss or Push
 		// Also determine whether a blackjack was obtained by the player,
 		// dealer or both
+		return OUTCOME_MODS[handOutcomeCode(playerHand, dealerHand,
+				playerCards, dealerCards, splitFlag)];
+	}
+	
+	public static int handOutcomeCode (int playerHand, int dealerHand, 
+			int playerCards, int dealerCards, boolean splitFlag) {
+		// Same as handOutcome, as an outcome code
 		
 		if (playerHand > 21) {
-			return "L";
+			return LOSS;
 		} else if (dealerHand > 21) {
-			return "W";
+			return WIN;
 		} else if (playerHand == 21 && dealerHand == 21 && playerCards == 2 
 				&& dealerCards == 2 && splitFlag == false) {
-			return "PB";
+			return PUSH | BLACKJACK;
 		} else if (playerHand == 21 && playerCards == 2 && splitFlag == false) {
-			return "WB";
+			return WIN | BLACKJACK;
 		} else if (dealerHand == 21 && dealerCards == 2) {
-			return "LB";
+			return LOSS | BLACKJACK;
 		} else if (playerHand > dealerHand) {
-			return "W";
+			return WIN;
 		} else if (playerHand < dealerHand) {
-			return "L";
+			return LOSS;
 		} else {
-			return "P";
+			return PUSH;
 		}
 	}
 	
-	public float getWinnings (String handResult) {
+	public static float getWinnings (String handResult) {
 		// Once the handResult is generated (these are the characters that
 		// go into the playerMods field), we can use them to determine the
 		// winnings for that hand.  The returned value is the multiplier of
@@ -188,7 +345,7 @@ public class BlackjackRoundRecord {
 		}		
 	}
 	
-	public float getTotalBet (String handResult) {
+	public static float getTotalBet (String handResult) {
 		// The total amount bet in that hand.  D adds one betUnit, I adds
 		// half a betUnit.  Split doesn't add because each split hand
 		// will account for their own betUnit.
@@ -239,51 +396,177 @@ public class BlackjackRoundRecord {
 	}
 	
 	public String csvRound() {
+		// Return the data in CSV format, in the layout set by FLATCSV
+		return csvRound(Settings.FLATCSV);
+	}
+	
+	
+	public String csvRound(boolean flatCsv) {
+		// Return the data in CSV format, as text
+		RecordBuffer csvRound = new RecordBuffer(256);
+		csvRound(flatCsv, csvRound);
+		return csvRound.toString();
+	}
+	
+	public void csvRound(boolean flatCsv, RecordBuffer csvRound) {
+		// Add the data in CSV format to the end of a buffer.  Nothing is
+		// allocated unless the buffer has to grow.
 		
-		String csvRound = "";
-		
-		if (Settings.FLATCSV) {
+		if (flatCsv) {
 			// Return the data in CSV format, in a single line
-			// for the entire round.  In player fields, each hand is separated
-			// by a "/" divider
+			// for the entire round.  In player fields, each hand is followed
+			// by a "/" divider, including the last (or only) hand
 			// Output: roundNum,shuffleNum,cardsLeft,deckCount,handsInRound,
 			// "playerCards","dealerCards","playerScore","dealerScore",
-			// "playerMods","playerWinnings"
+			// "playerMods","playerWinnings","playerBets"
 			
-			csvRound = roundNum + "," + shuffleNum + "," + 
-					cardsLeft + "," + deckCount + "," + handsInRound + ",\"" +
-					playerCards + "\",\"" + dealerCards + "\",\"" + 
-					playerScores + "\",\"" + dealerScore + "\",\"" + 
-					playerMods + "\",\"" + playerWinnings + "\",\"" + 
-					playerBets + "\"\n";
-			return csvRound;
+			csvRound.append(roundNum).append(',').append(shuffleNum)
+					.append(',').append(cardsLeft).append(',')
+					.append(deckCount).append(',').append(handsInRound)
+					.append(",\"");
+			for (int h = 0; h < handsInRound; h++) {
+				appendCards(csvRound, playerCards, cardStarts[h],
+						cardCounts[h]);
+				csvRound.append('/');
+			}
+			csvRound.append("\",\"");
+			appendCards(csvRound, dealerCards, 0, dealerCardCount);
+			csvRound.append("\",\"");
+			for (int h = 0; h < handsInRound; h++) {
+				csvRound.append(playerScores[h]).append('/');
+			}
+			csvRound.append("\",\"").append(dealerScore).append("\",\"");
+			for (int h = 0; h < handsInRound; h++) {
+				csvRound.append(OUTCOME_MODS[playerOutcomes[h]]).append('/');
+			}
+			csvRound.append("\",\"");
+			for (int h = 0; h < handsInRound; h++) {
+				csvRound.append(playerWinnings[h]).append('/');
+			}
+			csvRound.append("\",\"");
+			for (int h = 0; h < handsInRound; h++) {
+				csvRound.append(playerBets[h]).append('/');
+			}
+			csvRound.append("\"\n");
 		} else {
 			// Returns the data in CSV format, with a separate
-			// line for each hand in the round. 
+			// line for each hand in the round.
 			// Output: roundNum,shuffleNum,cardsLeft,deckCount,handNum,
 			// "playerCards","dealerCards",playerScore,dealerScore,
-			// "playerMods",playerWinnings
+			// "playerMods",playerWinnings,playerBet
 			
-			// Each of these arrays will contain information for one hand
-			String[] eachHand = playerCards.split("/");
-			String[] eachScore = playerScores.split("/");
-			String[] eachMod = playerMods.split("/");
-			String[] eachWinnings = playerWinnings.split("/");
-			String[] eachBet = playerBets.split("/");
-			
-			for (int i = 0; i < handsInRound; i++) {
-				String thisHand = roundNum + "," + shuffleNum + "," + 
-						cardsLeft + "," + deckCount + "," + (i+1) + ",\"" +
-						eachHand[i] + "\",\"" + dealerCards + "\"," + 
-						eachScore[i] + "," + dealerScore + ",\"" + 
-						eachMod[i] + "\"," + eachWinnings[i] + "," +
-						eachBet[i];
-				csvRound = csvRound + thisHand + "\n";
+			for (int h = 0; h < handsInRound; h++) {
+				csvRound.append(roundNum).append(',').append(shuffleNum)
+						.append(',').append(cardsLeft).append(',')
+						.append(deckCount).append(',').append(h+1)
+						.append(",\"");
+				appendCards(csvRound, playerCards, cardStarts[h],
+						cardCounts[h]);
+				csvRound.append("\",\"");
+				appendCards(csvRound, dealerCards, 0, dealerCardCount);
+				csvRound.append("\",").append(playerScores[h]).append(',')
+						.append(dealerScore).append(",\"")
+						.append(OUTCOME_MODS[playerOutcomes[h]]).append("\",")
+						.append(playerWinnings[h]).append(',')
+						.append(playerBets[h]).append('\n');
 			}
 		}
-				
-		return csvRound;
-		
 	}
 	
+	private static void appendCards(RecordBuffer out, byte[] cards,
+			int start, int count) {
+		// Add the value of each card as one character (10 = "T")
+		for (int i = start; i < start + count; i++) {
+			out.append(VALUE_CHARS.charAt(cards[i]));
+		}
+	}
+	
+	public void writeBinary(DataOutput out) throws IOException {
+		// Write the round in the compact binary layout: fixed-width
+		// numbers, and the card values of each hand packed two to a byte
+		// (see BinaryRoundRecorder for the whole file)
+		writeBinary(out, 0, 0, 0);
+	}
+	
+	public void writeBinary(DataOutput out, int roundBase, int shuffleBase,
+			int cardsLeftBase) throws IOException {
+		// Same, with the round number, shuffle number and cards left
+		// written as the difference from the given values (those of the
+		// round before, for delta encoding).  These differences are nearly
+		// always the same, so they compress much better.
+		out.writeInt(roundNum - roundBase);
+		out.writeInt(shuffleNum - shuffleBase);
+		out.writeShort(cardsLeft - cardsLeftBase);
+		out.writeShort(deckCount);
+		out.writeByte(handsInRound);
+		for (int h = 0; h < handsInRound; h++) {
+			writeCards(out, playerCards, cardStarts[h], cardCounts[h]);
+			out.writeByte(playerScores[h]);
+			out.writeByte(playerOutcomes[h]);
+			out.writeInt(playerWinnings[h]);
+			out.writeInt(playerBets[h]);
+		}
+		writeCards(out, dealerCards, 0, dealerCardCount);
+		out.writeByte(dealerScore);
+	}
+	
+	public void readBinary(DataInput in) throws IOException {
+		// Fill this record with a round written by writeBinary
+		readBinary(in, 0, 0, 0);
+	}
+	
+	public void readBinary(DataInput in, int roundBase, int shuffleBase,
+			int cardsLeftBase) throws IOException {
+		// Fill this record with a round written with the same base values
+		roundNum = roundBase + in.readInt();
+		shuffleNum = shuffleBase + in.readInt();
+		cardsLeft = cardsLeftBase + in.readShort();
+		deckCount = in.readShort();
+		startHands(in.readUnsignedByte());
+		int cardNum = 0;
+		for (int h = 0; h < handsInRound; h++) {
+			int count = in.readUnsignedByte();
+			if (cardNum + count > playerCards.length) {
+				playerCards = grow(playerCards, cardNum + count);
+			}
+			cardStarts[h] = cardNum;
+			cardCounts[h] = count;
+			readCards(in, playerCards, cardNum, count);
+			cardNum += count;
+			playerScores[h] = in.readUnsignedByte();
+			playerOutcomes[h] = in.readUnsignedByte();
+			playerWinnings[h] = in.readInt();
+			playerBets[h] = in.readInt();
+		}
+		dealerCardCount = in.readUnsignedByte();
+		if (dealerCardCount > dealerCards.length) {
+			dealerCards = grow(dealerCards, dealerCardCount);
+		}
+		readCards(in, dealerCards, 0, dealerCardCount);
+		dealerScore = in.readUnsignedByte();
+	}
+	
+	private static void writeCards(DataOutput out, byte[] cards, int start,
+			int count) throws IOException {
+		// The number of cards, then the values two to a byte: the first
+		// card in the high 4 bits.  An odd last card leaves the low 4 bits 0
+		out.writeByte(count);
+		for (int i = start; i < start + count; i += 2) {
+			int low = (i + 1 < start + count) ? cards[i + 1] : 0;
+			out.writeByte((cards[i] << 4) | low);
+		}
+	}
+	
+	private static void readCards(DataInput in, byte[] cards, int start,
+			int count) throws IOException {
+		// Read count card values written by writeCards, after the count
+		for (int i = start; i < start + count; i += 2) {
+			int b = in.readUnsignedByte();
+			cards[i] = (byte) (b >> 4);
+			if (i + 1 < start + count) {
+				cards[i + 1] = (byte) (b & 0x0F);
+			}
+		}
+	}
+
 }
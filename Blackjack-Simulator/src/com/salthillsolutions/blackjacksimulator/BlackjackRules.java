@@ -0,0 +1,66 @@
+package com.salthillsolutions.blackjacksimulator;
+
+/* The table rules used by a SimulationEngine.  By default they are taken
+ * from the Settings class, but each engine can be given its own rules, so
+ * that several configurations can be simulated in the same program run.
+ */
+
+public class BlackjackRules {
+
+	// How many 52-card decks in the total deck
+	private final int numberOfDecks;
+
+	// When this percent of the total deck is used, we will reshuffle at
+	// the next hand
+	private final int cutCardPercentage;
+
+	// The betting unit - the number of currency units played at the start
+	// of each hand
+	private final int betUnit;
+
+	// Number of hands to be dealt in each round
+	private final int handsPerRound;
+
+
+	public BlackjackRules() {
+		// Rules as given in the Settings class
+		this(Settings.NUMBER_OF_DECKS, Settings.CUT_CARD_PERCENTAGE,
+				Settings.BET_UNIT, Settings.HANDS_PER_ROUND);
+	}
+
+	public BlackjackRules(int numberOfDecks, int cutCardPercentage,
+			int betUnit, int handsPerRound) {
+		this.numberOfDecks = numberOfDecks;
+		this.cutCardPercentage = cutCardPercentage;
+		this.betUnit = betUnit;
+		this.handsPerRound = handsPerRound;
+	}
+
+	public int getNumberOfDecks() {
+		return numberOfDecks;
+	}
+
+	public int getCutCardPercentage() {
+		return cutCardPercentage;
+	}
+
+	public int getBetUnit() {
+		return betUnit;
+	}
+
+	public int getHandsPerRound() {
+		return handsPerRound;
+	}
+
+	public int getCardsLeftToShuffle() {
+		// If a round is to begin with fewer cards in the deck than this 
+		// number, all cards are reshuffled and a new deck is started.
+		return 52*numberOfDecks * (100 - cutCardPercentage) / 100;
+	}
+
+	public String toString() {
+		return numberOfDecks + " decks, cut card at " + cutCardPercentage +
+				"%, bet unit " + betUnit + ", " + handsPerRound + 
+				" hand(s) per round";
+	}
+}
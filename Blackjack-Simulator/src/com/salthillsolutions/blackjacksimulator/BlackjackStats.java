@@ -7,30 +7,68 @@ package com.salthillsolutions.blackjacksimulator;
  * Double: a player hand that was doubled down was won/lost/pushed
  * Split: each split hand was won/lost/pushed
  * Insurance: insurance bet was won or lost - can't be pushed 
+ *
+ * All counters are 64-bit, so they do not overflow on long runs.  A
+ * BlackjackStats belongs to the one thread (engine) that updates it, so
+ * updates need no locking; the stats of several threads are added 
+ * together with merge.  Other threads can still follow the stats while
+ * they are being updated, through snapshot: the updating thread calls
+ * checkpoint between rounds, and every CHECKPOINT_INTERVAL rounds it
+ * publishes a copy of its counters, which is then what snapshot returns.
+ * The copy is made once and filled in again in place under its own lock,
+ * so publishing does not allocate anything after the first time.
+ *
+ * The winnings and bet of each round are also followed with Welford's
+ * online method: their running means, the sums of squared differences
+ * from the means, and the co-moment of the two.  From these come the
+ * standard error of the winnings per round, and a confidence interval for
+ * the edge (total winnings / total bet, as a ratio of two means).  Merged
+ * stats combine these exactly, as if all rounds had been played by one
+ * engine, so the interval of several threads is as narrow as for the
+ * same number of rounds on one thread.
  */
 
 public class BlackjackStats {
 
+	// Number of rounds between copies published for snapshot
+	public static final int CHECKPOINT_INTERVAL = 4096;
+
 	// Compile the wins, losses and pushes in the following circumstances:
 
 	
-	private int wNet, lNet, pNet;
-	private int wOverall, lOverall, pOverall;
-	private int wBj, lBj, pBj;
-	private int wDouble, lDouble, pDouble;
-	private int wSplit, lSplit, pSplit;
-	private int wInsurance, lInsurance;
-	private int totalWinnings, totalBet;
+	private long wNet, lNet, pNet;
+	private long wOverall, lOverall, pOverall;
+	private long wBj, lBj, pBj;
+	private long wDouble, lDouble, pDouble;
+	private long wSplit, lSplit, pSplit;
+	private long wInsurance, lInsurance;
+	private long totalWinnings, totalBet;
+
+	// Running means of the winnings and bet per round, the sums of their
+	// squared differences from the means, and the sum of the products of
+	// the two differences
+	private double meanWinnings, meanBet;
+	private double m2Winnings, m2Bet, comoment;
+
+	// The copy published by checkpoint or publish (only read or written
+	// while holding its lock), and the number of rounds it holds
+	private volatile BlackjackStats published = null;
+	private long publishedRounds = 0;
 
 	
-	public int getTotalWinnings() {
+	public long getTotalWinnings() {
 		return totalWinnings;
 	}
 	
-	public int getTotalPlayed() {
+	public long getTotalPlayed() {
 		return totalBet;
 	}
 
+	public long getRounds() {
+		// Every round is a net win, loss or push
+		return wNet + lNet + pNet;
+	}
+
 	public void updateWinnings(int roundWinnings, int roundBet) {
 		// Declare a net win, loss or push based on the total winnings for all
 		// hands in the round (positive = win, negative = loss, zero = push)
@@ -45,6 +83,60 @@ public class BlackjackStats {
 		
 		// This is the total money put on the table in this round
 		this.totalBet += roundBet;
+
+		// Update the running means and squared differences
+		long rounds = getRounds();
+		double dWinnings = roundWinnings - meanWinnings;
+		double dBet = roundBet - meanBet;
+		meanWinnings += dWinnings / rounds;
+		meanBet += dBet / rounds;
+		m2Winnings += dWinnings * (roundWinnings - meanWinnings);
+		m2Bet += dBet * (roundBet - meanBet);
+		comoment += dWinnings * (roundBet - meanBet);
+	}
+
+	public double getMeanWinnings() {
+		// The average winnings per round
+		return meanWinnings;
+	}
+
+	public double getVariance() {
+		// The sample variance of the winnings per round
+		long rounds = getRounds();
+		return (rounds > 1) ? m2Winnings / (rounds - 1) : 0;
+	}
+
+	public double getStandardError() {
+		// The standard error of the average winnings per round
+		long rounds = getRounds();
+		return (rounds > 1) ? Math.sqrt(getVariance() / rounds) : 0;
+	}
+
+	public double getEdge() {
+		// The player's winnings as a fraction of the money bet (negative
+		// for a house edge)
+		return (totalBet != 0) ? (double) totalWinnings / totalBet : 0;
+	}
+
+	public double getEdgeError() {
+		// The standard error of getEdge.  The edge is the ratio of the
+		// mean winnings and the mean bet, so its variance is that of
+		// (winnings - edge * bet) per round, divided by the mean bet squared
+		long rounds = getRounds();
+		if (rounds < 2 || meanBet == 0) {
+			return 0;
+		}
+		double edge = meanWinnings / meanBet;
+		double variance = (m2Winnings - 2 * edge * comoment + 
+				edge * edge * m2Bet) / (rounds - 1);
+		return Math.sqrt(Math.max(variance, 0) / rounds) / meanBet;
+	}
+
+	public boolean isPrecise(double target, double z) {
+		// True once the confidence interval of the edge, z standard errors
+		// either side, is narrower than target on each side.  At least two
+		// rounds are needed to have an interval at all.
+		return getRounds() > 1 && z * getEdgeError() < target;
 	}
 	
 	// Next 3 functions records wins/losses/pushes where someone 
@@ -113,10 +205,103 @@ public class BlackjackStats {
 	}
 	
 
+	public void merge(BlackjackStats other) {
+		// Add the stats of another BlackjackStats into this one, so that
+		// stats collected by separate engines give a single report
+		this.wNet += other.wNet; this.lNet += other.lNet;
+		this.pNet += other.pNet;
+		this.wOverall += other.wOverall; this.lOverall += other.lOverall;
+		this.pOverall += other.pOverall;
+		this.wBj += other.wBj; this.lBj += other.lBj; this.pBj += other.pBj;
+		this.wDouble += other.wDouble; this.lDouble += other.lDouble;
+		this.pDouble += other.pDouble;
+		this.wSplit += other.wSplit; this.lSplit += other.lSplit;
+		this.pSplit += other.pSplit;
+		this.wInsurance += other.wInsurance;
+		this.lInsurance += other.lInsurance;
+		this.totalWinnings += other.totalWinnings;
+		this.totalBet += other.totalBet;
+
+		// Combine the means and squared differences of the two sets of
+		// rounds (Chan et al.)
+		long rounds = this.getRounds();
+		long otherRounds = other.getRounds();
+		long before = rounds - otherRounds;
+		if (otherRounds > 0) {
+			double dWinnings = other.meanWinnings - meanWinnings;
+			double dBet = other.meanBet - meanBet;
+			double weight = (double) before * otherRounds / rounds;
+			meanWinnings += dWinnings * otherRounds / rounds;
+			meanBet += dBet * otherRounds / rounds;
+			m2Winnings += other.m2Winnings + dWinnings * dWinnings * weight;
+			m2Bet += other.m2Bet + dBet * dBet * weight;
+			comoment += other.comoment + dWinnings * dBet * weight;
+		}
+	}
+
+	public boolean checkpoint() {
+		// Called by the updating thread when no round is half counted.
+		// Every CHECKPOINT_INTERVAL rounds, a copy is published for snapshot,
+		// and true is returned.
+		if (getRounds() - publishedRounds >= CHECKPOINT_INTERVAL) {
+			publish();
+			return true;
+		}
+		return false;
+	}
+
+	public void publish() {
+		// Publish a copy of the stats now; called by the updating thread
+		// between rounds, for example when it has finished
+		BlackjackStats copy = published;
+		if (copy == null) {
+			copy = new BlackjackStats();
+		}
+		synchronized (copy) {
+			copy.clear();
+			copy.merge(this);
+		}
+		publishedRounds = getRounds();
+		published = copy;
+	}
+
+	private void clear() {
+		// Set every count back to zero, as in a new BlackjackStats
+		wNet = 0; lNet = 0; pNet = 0;
+		wOverall = 0; lOverall = 0; pOverall = 0;
+		wBj = 0; lBj = 0; pBj = 0;
+		wDouble = 0; lDouble = 0; pDouble = 0;
+		wSplit = 0; lSplit = 0; pSplit = 0;
+		wInsurance = 0; lInsurance = 0;
+		totalWinnings = 0; totalBet = 0;
+		meanWinnings = 0; meanBet = 0;
+		m2Winnings = 0; m2Bet = 0; comoment = 0;
+	}
+
+	public BlackjackStats snapshot() {
+		// A copy of the stats as they were at the last checkpoint, which
+		// any thread can read while the stats are being updated.  Every
+		// count in it is from the same moment between two rounds.
+		BlackjackStats copy = new BlackjackStats();
+		BlackjackStats last = published;
+		if (last != null) {
+			synchronized (last) {
+				copy.merge(last);
+			}
+		}
+		return copy;
+	}
+
 	public String toString() {
 		// Return a String with all of the stats, in several lines
 		String money = "Total balance: " + totalWinnings + 
 				"  Total bet: " + totalBet + "\n";
+		String ev = String.format("Per round: EV %.3f +/- %.3f  SD %.2f%n" +
+				"Edge: %.4f%% +/- %.4f%% (+/- is %.2f standard errors)%n",
+				meanWinnings, Settings.CONFIDENCE_Z * getStandardError(), 
+				Math.sqrt(getVariance()), 100 * getEdge(), 
+				100 * Settings.CONFIDENCE_Z * getEdgeError(),
+				Settings.CONFIDENCE_Z);
 		String net = "Net: W " + wNet + "  L " + lNet + 
 				"  P " + pNet + "\n";
 		String overall = "Overall: W " + wOverall + "  L " + lOverall + 
@@ -133,7 +318,7 @@ public class BlackjackStats {
 					"\n";
 		}
 		
-		return money + net + overall + bj + dbl + split + insurance;
+		return money + ev + net + overall + bj + dbl + split + insurance;
 	}
 
 }
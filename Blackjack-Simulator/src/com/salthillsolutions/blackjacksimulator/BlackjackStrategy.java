@@ -5,13 +5,18 @@ package com.salthillsolutions.blackjacksimulator;
  * by the card count.
  * Dealer's strategy is locked: hit 16 or less, stand 17 or more, hit soft 17
  * Options: Hit, Stand, Double, sPlit
+ * The simulation takes the player's moves from a StrategyChart; the
+ * built-in chart gives the same moves as playerMove below, which is
+ * kept for manual use and for comparison.
  */
 
 public class BlackjackStrategy {
 	
-	public static char insurance () {
+	public static char insurance (Deck deck) {
 		// Player's move if the dealer's up card is an ace. For now,
-		// we will always refuse insurance.
+		// we will always refuse insurance.  The deck is given so that a
+		// counting strategy can look at the count (deck.trueCount()) or
+		// at the ten-cards left (deck.tenCardsLeft()).
 		return 'N';
 	}
 	
@@ -39,7 +44,7 @@ public class BlackjackStrategy {
 		// If the player has exactly 2 cards, check if they are a pair
 		if (playerHand.getCardCount() == 2 && playerHand.isPair()) {
 			// The value of the first card is the value of the pair
-			int thePair = playerHand.getCard(0).getValue();
+			int thePair = playerHand.getCardValue(0);
 			// Now get the next move based on the pair
 			switch (thePair) {
 			case 1:
@@ -101,9 +106,9 @@ public class BlackjackStrategy {
 		// If the player has exactly 2 unpaired cards, check if one is an ace
 		if (playerHand.getCardCount() == 2 && playerHand.isValue(1)) {
 			// One card is an ace; find the value of the non-ace card
-			int theOtherCard = playerHand.getCard(0).getValue();
+			int theOtherCard = playerHand.getCardValue(0);
 			if (theOtherCard == 1) {  // In case the first card was the ace
-				theOtherCard = playerHand.getCard(1).getValue();
+				theOtherCard = playerHand.getCardValue(1);
 			}
 			// Now get the next move based on the non-ace card 
 			// It shouldn't be a 10-valued card - that would be a blackjack
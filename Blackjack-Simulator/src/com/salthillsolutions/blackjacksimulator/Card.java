@@ -1,7 +1,5 @@
 package com.salthillsolutions.blackjacksimulator;
 
-import java.util.Comparator;
-
 // Generic methods for a single card.
 
 public class Card {
@@ -15,6 +13,28 @@ public class Card {
 	protected final int suit;   // The suit of this card, one of the constants
 	protected final int value;  // The value of this card, from 1 to 13.
 
+	// A card can also be kept as a single int code (small enough for a
+	// byte): the value in the low 4 bits and the suit in the next 2 bits.
+	// Decks and hands keep their cards as codes, and only turn them into
+	// Card objects for display.  There is one shared Card object per code.
+	private final static Card[] CARDS = new Card[64];
+	
+	// Blackjack points and count value for each code, so that the hot
+	// path only needs an array read for each card
+	private final static byte[] BLACKJACK_VALUES = new byte[64];
+	private final static byte[] COUNT_VALUES = new byte[64];
+	
+	static {
+		for (int s = 0; s <= 3; s++) {
+			for (int v = 1; v <= 13; v++) {
+				Card card = new Card(v, s);
+				CARDS[code(v, s)] = card;
+				BLACKJACK_VALUES[code(v, s)] = (byte) card.getBlackjackValue();
+				COUNT_VALUES[code(v, s)] = (byte) card.getCardCountValue();
+			}
+		}
+	}
+
 	
 	public Card(int theValue, int theSuit) {
 		// Construct a card with the specified value and suit.
@@ -25,6 +45,36 @@ public class Card {
 		suit = theSuit;
 	}
 
+	public static int code(int value, int suit) {
+		// Return the code for a card of the given value and suit
+		return (suit << 4) | value;
+	}
+	
+	public static int codeValue(int code) {
+		// Return the value (1 to 13) of a card code
+		return code & 0x0F;
+	}
+	
+	public static int codeBlackjackValue(int code) {
+		// Same as getBlackjackValue, for a card code
+		return BLACKJACK_VALUES[code];
+	}
+	
+	public static int codeCountValue(int code) {
+		// Same as getCardCountValue, for a card code
+		return COUNT_VALUES[code];
+	}
+	
+	public static Card fromCode(int code) {
+		// Return the shared Card object for a card code
+		return CARDS[code];
+	}
+	
+	public int getCode() {
+		// Return the code for this card
+		return code(value, suit);
+	}
+
 	public int getSuit() {
 		// Return the int that codes for this card's suit.
 		return suit;
@@ -135,27 +185,3 @@ public class Card {
 	}
 		
 }
-	
-class CardSuitComparator implements Comparator<Card>{
-	// This comparator ranks first by suit, then by value within the suit
-
-	public int compare(Card c1, Card c2) {
-		int result = Integer.compare(c1.getSuit(),c2.getSuit());
-		if (result == 0) {
-			result = -1*(Integer.compare(c1.getValue(),c2.getValue()));
-		}
-		return result;
-	}
-}
-
-class CardValueComparator implements Comparator<Card>{
-	// This comparator ranks first by value, then by suit within the value
-	
-	public int compare(Card c1, Card c2) {
-		int result = -1*(Integer.compare(c1.getValue(),c2.getValue()));
-		if (result == 0) {
-			result = Integer.compare(c1.getSuit(),c2.getSuit());
-		}
-		return result;
-	}
-}
\ No newline at end of file
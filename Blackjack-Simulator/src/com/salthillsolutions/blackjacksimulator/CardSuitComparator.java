@@ -0,0 +1,15 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.util.Comparator;
+
+class CardSuitComparator implements Comparator<Card>{
+	// This comparator ranks first by suit, then by value within the suit
+
+	public int compare(Card c1, Card c2) {
+		int result = Integer.compare(c1.getSuit(),c2.getSuit());
+		if (result == 0) {
+			result = -1*(Integer.compare(c1.getValue(),c2.getValue()));
+		}
+		return result;
+	}
+}
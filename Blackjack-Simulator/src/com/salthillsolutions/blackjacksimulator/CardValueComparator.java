@@ -0,0 +1,15 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.util.Comparator;
+
+class CardValueComparator implements Comparator<Card>{
+	// This comparator ranks first by value, then by suit within the value
+	
+	public int compare(Card c1, Card c2) {
+		int result = -1*(Integer.compare(c1.getValue(),c2.getValue()));
+		if (result == 0) {
+			result = Integer.compare(c1.getSuit(),c2.getSuit());
+		}
+		return result;
+	}
+}
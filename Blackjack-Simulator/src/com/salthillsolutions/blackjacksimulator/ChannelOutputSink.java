@@ -0,0 +1,122 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/* An output file written through a FileChannel, for records that are
+ * already encoded as bytes (see RecordBuffer).  Bytes are either
+ * collected in one large direct buffer and written to the channel when
+ * it is full, or, in mapped mode, copied straight into a window of the
+ * file mapped into memory, which moves along as the file grows.  Either
+ * way there is no charset encoding and no small intermediate buffers.
+ * In mapped mode the window is forced to disk when the file is closed,
+ * and the file is then cut back to the bytes actually written.  Java
+ * cannot unmap the last window, and Windows does not allow a file to be
+ * cut while it is mapped, so on Windows mapped mode is not used: the
+ * sink writes through the direct buffer instead.
+ */
+
+public class ChannelOutputSink extends OutputStream {
+
+	// Size of the direct buffer, and of each mapped window
+	private static final int BUFFER_SIZE = 1 << 20;
+	private static final long WINDOW_SIZE = 64L << 20;
+
+	private final RandomAccessFile file;
+	private final FileChannel channel;
+	private final boolean mapped;
+	private ByteBuffer buffer;		// Direct buffer, or the mapped window
+	private long windowStart = 0;	// Position of the window in the file
+	private boolean closed = false;
+
+	public ChannelOutputSink(String fileName, boolean mapped) 
+			throws IOException {
+		// Note that the file is overwritten
+		this.file = new RandomAccessFile(fileName, "rw");
+		this.file.setLength(0);
+		this.channel = file.getChannel();
+		this.mapped = mapped && canMap();
+		if (this.mapped) {
+			buffer = map(0);
+		} else {
+			buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		}
+	}
+
+	public static boolean canMap() {
+		// False where a file cannot be cut while it is mapped (Windows)
+		return !System.getProperty("os.name", "").startsWith("Windows");
+	}
+
+	public void write(int b) throws IOException {
+		if (!buffer.hasRemaining()) {
+			makeRoom();
+		}
+		buffer.put((byte) b);
+	}
+
+	public void write(byte[] bytes, int offset, int length) 
+			throws IOException {
+		// Fill the buffer or window, make room, and carry on until every
+		// byte has been taken
+		while (length > 0) {
+			if (!buffer.hasRemaining()) {
+				makeRoom();
+			}
+			int part = Math.min(length, buffer.remaining());
+			buffer.put(bytes, offset, part);
+			offset += part;
+			length -= part;
+		}
+	}
+
+	private void makeRoom() throws IOException {
+		// Empty the direct buffer into the channel, or map the next window
+		if (mapped) {
+			windowStart += buffer.position();
+			buffer = map(windowStart);
+		} else {
+			writeBuffer();
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	private MappedByteBuffer map(long position) throws IOException {
+		// Map the window that starts at position; this makes the file
+		// longer as needed
+		return channel.map(FileChannel.MapMode.READ_WRITE, position, 
+				WINDOW_SIZE);
+	}
+
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			if (mapped) {
+				// Write the last window to disk, then cut off its unused
+				// end
+				long length = windowStart + buffer.position();
+				((MappedByteBuffer) buffer).force();
+				buffer = null;
+				channel.truncate(length);
+			} else {
+				writeBuffer();
+			}
+		} finally {
+			file.close();
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package com.salthillsolutions.blackjacksimulator;
+
+/* The winnings and bets of the rounds played, grouped by the true count
+ * and by the cards left in the deck at the start of each round, so that
+ * the edge at each count can be seen without writing every round to the
+ * output file.  The true count is rounded to the nearest whole number, in
+ * the same way as CsvAnalyzer groups by it; counts beyond MIN_TRUE_COUNT
+ * and MAX_TRUE_COUNT are put with those.  Cards left are grouped in
+ * steps of cardsLeftStep.
+ *
+ * Each group keeps the number of rounds, the total winnings and bet, and
+ * the sum of the squared winnings, all in flat arrays: the true count
+ * groups first, then the cards left groups.  Like BlackjackStats, a
+ * histogram belongs to one engine, and the histograms of several engines
+ * are added together with merge.
+ */
+
+public class CountHistogram {
+
+	public static final int MIN_TRUE_COUNT = -10, MAX_TRUE_COUNT = 10;
+	private static final int TRUE_COUNTS = MAX_TRUE_COUNT - MIN_TRUE_COUNT + 1;
+
+	private final int cardsLeftStep;
+	private final long[] rounds, winnings, bet;
+	private final double[] squares;
+
+	public CountHistogram(int deckSize, int cardsLeftStep) {
+		// A histogram for a deck of deckSize cards
+		this.cardsLeftStep = cardsLeftStep;
+		int groups = TRUE_COUNTS + deckSize / cardsLeftStep + 1;
+		rounds = new long[groups];
+		winnings = new long[groups];
+		bet = new long[groups];
+		squares = new double[groups];
+	}
+
+	public static CountHistogram fromSettings(BlackjackRules rules) {
+		// A histogram for the deck in rules, with the cards left step in
+		// Settings, or null if COUNT_HISTOGRAM is not set
+		if (!Settings.COUNT_HISTOGRAM) {
+			return null;
+		}
+		return new CountHistogram(52 * rules.getNumberOfDecks(),
+				Settings.COUNT_HISTOGRAM_STEP);
+	}
+
+	public static int trueCount(int count, int cardsLeft) {
+		// The running count divided by the decks left, rounded to the
+		// nearest whole number.  An empty deck counts as 0.
+		if (cardsLeft == 0) {
+			return 0;
+		}
+		return (int) Math.round(count * 52.0 / cardsLeft);
+	}
+
+	public void add(int count, int cardsLeft, int roundWinnings,
+			int roundBet) {
+		// Add one round, given the running count and cards left at its start
+		int trueCount = Math.max(MIN_TRUE_COUNT,
+				Math.min(MAX_TRUE_COUNT, trueCount(count, cardsLeft)));
+		add(trueCount - MIN_TRUE_COUNT, roundWinnings, roundBet);
+		add(TRUE_COUNTS + cardsLeft / cardsLeftStep, roundWinnings, roundBet);
+	}
+
+	private void add(int group, int roundWinnings, int roundBet) {
+		rounds[group]++;
+		winnings[group] += roundWinnings;
+		bet[group] += roundBet;
+		squares[group] += (double) roundWinnings * roundWinnings;
+	}
+
+	public void merge(CountHistogram other) {
+		// Add the rounds of another histogram with the same groups
+		for (int i = 0; i < rounds.length; i++) {
+			rounds[i] += other.rounds[i];
+			winnings[i] += other.winnings[i];
+			bet[i] += other.bet[i];
+			squares[i] += other.squares[i];
+		}
+	}
+
+	public long getRounds(int trueCount) {
+		return rounds[trueCount - MIN_TRUE_COUNT];
+	}
+
+	public double getEdge(int trueCount) {
+		// The winnings as a fraction of the money bet at this true count
+		int i = trueCount - MIN_TRUE_COUNT;
+		return (bet[i] != 0) ? (double) winnings[i] / bet[i] : 0;
+	}
+
+	public String toString() {
+		// A table of each group that has any rounds: the true counts, then
+		// the cards left.  The +/- column is CONFIDENCE_Z standard errors
+		// of the EV per round.
+		StringBuilder table = new StringBuilder();
+		table.append(String.format("%-12s %12s %10s %10s %9s %8s%n",
+				"True count", "Rounds", "EV/round", "+/-", "Edge", "Share"));
+		long total = 0;
+		for (int i = 0; i < TRUE_COUNTS; i++) {
+			total += rounds[i];
+		}
+		for (int i = 0; i < rounds.length; i++) {
+			if (i == TRUE_COUNTS) {
+				table.append(String.format("%-12s%n", "Cards left"));
+			}
+			if (rounds[i] == 0) {
+				continue;
+			}
+			String label;
+			if (i < TRUE_COUNTS) {
+				int trueCount = i + MIN_TRUE_COUNT;
+				label = ((trueCount == MIN_TRUE_COUNT) ? "<=" :
+						(trueCount == MAX_TRUE_COUNT) ? ">=" : "") + trueCount;
+			} else {
+				int first = (i - TRUE_COUNTS) * cardsLeftStep;
+				label = first + "-" + (first + cardsLeftStep - 1);
+			}
+			double mean = (double) winnings[i] / rounds[i];
+			double error = 0;
+			if (rounds[i] > 1) {
+				double variance = (squares[i] - mean * winnings[i]) /
+						(rounds[i] - 1);
+				error = Math.sqrt(Math.max(variance, 0) / rounds[i]);
+			}
+			table.append(String.format("%-12s %,12d %10.3f %10.3f %8.3f%% " +
+					"%7.2f%%%n", label, rounds[i], mean,
+					Settings.CONFIDENCE_Z * error,
+					(bet[i] != 0) ? 100.0 * winnings[i] / bet[i] : 0,
+					100.0 * rounds[i] / total));
+		}
+		return table.toString();
+	}
+
+}
@@ -0,0 +1,431 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/* Reads an output CSV file (in either layout) and shows the results of
+ * the hands grouped by one of its columns: the number of hands, wins,
+ * losses and pushes, the average winnings per hand (EV) with its
+ * standard deviation, and the winnings as a percentage of the money bet.
+ * Run it as:
+ *
+ *   java com.salthillsolutions.blackjacksimulator.CsvAnalyzer
+ *        blackjacksim.csv [column] [threads]
+ *
+ * column is one of all (the default), round, shuffle, cardsleft, count,
+ * truecount, hand, playerscore, dealerscore, outcome, winnings or bet.
+ * 
+ * The file is memory-mapped and cut into chunks that start and end on
+ * line boundaries.  Each chunk is parsed on its own thread straight from
+ * the mapped bytes, into its own table of groups, without creating any
+ * objects per line; the tables are added together at the end.
+ */
+
+public class CsvAnalyzer {
+
+	// Columns that can be used for grouping, and their numbers
+	public static final String[] COLUMNS = { "all", "round", "shuffle",
+			"cardsleft", "count", "truecount", "hand", "playerscore",
+			"dealerscore", "outcome", "winnings", "bet" };
+	private static final int BY_ALL = 0, BY_ROUND = 1, BY_SHUFFLE = 2,
+			BY_CARDS_LEFT = 3, BY_COUNT = 4, BY_TRUE_COUNT = 5, BY_HAND = 6,
+			BY_PLAYER_SCORE = 7, BY_DEALER_SCORE = 8, BY_OUTCOME = 9,
+			BY_WINNINGS = 10, BY_BET = 11;
+
+	// Size of each chunk, and the longest line that is expected
+	private static final long CHUNK_SIZE = 32L << 20;
+	private static final int MAX_LINE = 1 << 16;
+
+	// Field numbers in a line, the same in both layouts
+	private static final int ROUND = 0, SHUFFLE = 1, CARDS_LEFT = 2,
+			COUNT = 3, HAND = 4, PLAYER_SCORE = 7, DEALER_SCORE = 8,
+			OUTCOME = 9, WINNINGS = 10, BET = 11, FIELDS = 12;
+
+	public static void main(String[] args) {
+		if (args.length < 1) {
+			System.out.println("Usage: CsvAnalyzer <csv file> [column] " +
+					"[threads]");
+			return;
+		}
+		String column = (args.length > 1) ? args[1] : "all";
+		int threads = (args.length > 2) ? Integer.parseInt(args[2]) :
+				Runtime.getRuntime().availableProcessors();
+		try {
+			long start = System.nanoTime();
+			Groups groups = analyze(args[0], column, threads);
+			double seconds = (System.nanoTime() - start) / 1e9;
+			System.out.print(groups.report(column));
+			System.out.printf("%,d lines (%,.1f MB) read in %.2f s on " +
+					"%d threads%n", groups.lines, groups.bytes / 1e6, 
+					seconds, threads);
+			if (groups.skipped > 0) {
+				System.out.printf("%,d incomplete lines skipped%n", 
+						groups.skipped);
+			}
+		} catch (IOException e) { e.printStackTrace(); }
+	}
+
+	public static Groups analyze(String csvFile, String column, int threads)
+			throws IOException {
+		// Read the whole file, grouping the hands by column
+		final int groupBy = Arrays.asList(COLUMNS).indexOf(
+				column.toLowerCase());
+		if (groupBy < 0) {
+			throw new IllegalArgumentException("Unknown column: " + column);
+		}
+		RandomAccessFile file = new RandomAccessFile(csvFile, "r");
+		ExecutorService pool = Executors.newFixedThreadPool(
+				Math.max(threads, 1));
+		try {
+			final FileChannel channel = file.getChannel();
+			final long size = channel.size();
+			List<Future<Groups>> chunks = new ArrayList<Future<Groups>>();
+			for (long start = 0; start < size; start += CHUNK_SIZE) {
+				final long chunkStart = start;
+				final long chunkEnd = Math.min(start + CHUNK_SIZE, size);
+				chunks.add(pool.submit(new Callable<Groups>() {
+					public Groups call() throws IOException {
+						return readChunk(channel, size, chunkStart, chunkEnd,
+								groupBy);
+					}
+				}));
+			}
+			Groups total = new Groups();
+			for (Future<Groups> chunk : chunks) {
+				try {
+					total.add(chunk.get());
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted", e);
+				} catch (ExecutionException e) {
+					throw new IOException(e.getCause());
+				}
+			}
+			total.bytes = size;
+			return total;
+		} finally {
+			pool.shutdown();
+			file.close();
+		}
+	}
+
+	private static Groups readChunk(FileChannel channel, long size,
+			long chunkStart, long chunkEnd, int groupBy) throws IOException {
+		// Parse the lines that start from chunkStart up to chunkEnd.  The
+		// line that is cut at chunkStart belongs to the chunk before; the
+		// line that is cut at chunkEnd is read to its end.
+		long mapStart = Math.max(chunkStart - 1, 0);
+		long mapEnd = Math.min(chunkEnd + MAX_LINE, size);
+		MappedByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY,
+				mapStart, mapEnd - mapStart);
+		int pos = (int) (chunkStart - mapStart);
+		int end = (int) (chunkEnd - mapStart);
+		if (chunkStart > 0) {
+			// Skip to the first line that starts in this chunk
+			while (pos < end && bytes.get(pos - 1) != '\n') {
+				pos++;
+			}
+		}
+		Groups groups = new Groups();
+		int[] fields = new int[FIELDS];
+		int limit = bytes.limit();
+		while (pos < end) {
+			// Find where each field of the line starts.  The last line of
+			// the file may have no '\n', and then ends at the limit.
+			int field = 0;
+			fields[field++] = pos;
+			while (pos < limit && bytes.get(pos) != '\n') {
+				if (bytes.get(pos) == ',' && field < FIELDS) {
+					fields[field++] = pos + 1;
+				}
+				pos++;
+			}
+			int lineEnd = pos;
+			pos++;	// Past the '\n'
+			if (field < FIELDS || fields[FIELDS - 1] >= lineEnd) {
+				continue;	// Not a full line
+			}
+			// In the flat layout, the player fields are quoted lists with
+			// one item per hand; otherwise there is a single hand
+			boolean flat = bytes.get(fields[PLAYER_SCORE]) == '"';
+			int hands = flat ? (int) number(bytes, fields[HAND], 0, lineEnd)
+					: 1;
+			if (hands < 1 || !hasItems(bytes, fields, hands, lineEnd)) {
+				groups.skipped++;
+				continue;
+			}
+			groups.lines++;
+			for (int h = 0; h < hands; h++) {
+				long key = groupKey(bytes, fields, h, flat, groupBy, lineEnd);
+				int outcome = outcome(bytes, 
+						item(bytes, fields[OUTCOME], h, lineEnd), lineEnd);
+				long winnings = number(bytes, fields[WINNINGS], h, lineEnd);
+				long bet = number(bytes, fields[BET], h, lineEnd);
+				groups.addHand(key, outcome, winnings, bet);
+			}
+		}
+		return groups;
+	}
+
+	private static long groupKey(MappedByteBuffer bytes, int[] fields,
+			int h, boolean flat, int groupBy, int lineEnd) {
+		// The value of the grouping column for hand h of a line
+		switch (groupBy) {
+		case BY_ROUND:      return number(bytes, fields[ROUND], 0, lineEnd);
+		case BY_SHUFFLE:    return number(bytes, fields[SHUFFLE], 0, lineEnd);
+		case BY_CARDS_LEFT: 
+			return number(bytes, fields[CARDS_LEFT], 0, lineEnd);
+		case BY_COUNT:      return number(bytes, fields[COUNT], 0, lineEnd);
+		case BY_TRUE_COUNT:
+			// Rounded to the nearest whole number
+			long cardsLeft = number(bytes, fields[CARDS_LEFT], 0, lineEnd);
+			return (cardsLeft == 0) ? 0 : Math.round(number(bytes, 
+					fields[COUNT], 0, lineEnd) * 52.0 / cardsLeft);
+		case BY_HAND:
+			return flat ? h + 1 : number(bytes, fields[HAND], 0, lineEnd);
+		case BY_PLAYER_SCORE:
+			return number(bytes, fields[PLAYER_SCORE], h, lineEnd);
+		case BY_DEALER_SCORE:
+			return number(bytes, fields[DEALER_SCORE], 0, lineEnd);
+		case BY_OUTCOME:
+			return outcome(bytes, item(bytes, fields[OUTCOME], h, lineEnd),
+					lineEnd);
+		case BY_WINNINGS:   return number(bytes, fields[WINNINGS], h, lineEnd);
+		case BY_BET:        return number(bytes, fields[BET], h, lineEnd);
+		default:            return 0;	// BY_ALL
+		}
+	}
+
+	private static boolean hasItems(MappedByteBuffer bytes, int[] fields,
+			int hands, int lineEnd) {
+		// True if every field with one item per hand has all of them
+		return item(bytes, fields[PLAYER_SCORE], hands - 1, lineEnd) >= 0 &&
+				item(bytes, fields[OUTCOME], hands - 1, lineEnd) >= 0 &&
+				item(bytes, fields[WINNINGS], hands - 1, lineEnd) >= 0 &&
+				item(bytes, fields[BET], hands - 1, lineEnd) >= 0;
+	}
+
+	private static int item(MappedByteBuffer bytes, int fieldStart, int h,
+			int lineEnd) {
+		// Position of item h of a field: after its opening quote, if any,
+		// and after h "/" dividers.  -1 if the field ends (at a ',', or
+		// the end of the line) before item h.
+		int pos = fieldStart;
+		if (pos < lineEnd && bytes.get(pos) == '"') {
+			pos++;
+		}
+		for (int i = 0; i < h; i++) {
+			byte b;
+			while (pos < lineEnd && (b = bytes.get(pos)) != '/') {
+				if (b == ',') {
+					return -1;
+				}
+				pos++;
+			}
+			if (pos >= lineEnd) {
+				return -1;
+			}
+			pos++;
+		}
+		return pos;
+	}
+
+	private static long number(MappedByteBuffer bytes, int fieldStart, 
+			int h, int lineEnd) {
+		// Item h of a field, read as a whole number; 0 if there is none
+		int pos = item(bytes, fieldStart, h, lineEnd);
+		if (pos < 0) {
+			return 0;
+		}
+		boolean negative = pos < lineEnd && bytes.get(pos) == '-';
+		if (negative) {
+			pos++;
+		}
+		long number = 0;
+		byte b;
+		while (pos < lineEnd && (b = bytes.get(pos)) >= '0' && b <= '9') {
+			number = number * 10 + (b - '0');
+			pos++;
+		}
+		return negative ? -number : number;
+	}
+
+	private static int outcome(MappedByteBuffer bytes, int pos, 
+			int lineEnd) {
+		// The outcome code (see BlackjackRoundRecord) for the letters at
+		// pos, which end at a quote, "/" or the end of the line
+		if (pos < 0 || pos >= lineEnd) {
+			return BlackjackRoundRecord.PUSH;
+		}
+		int code = (bytes.get(pos) == 'W') ? BlackjackRoundRecord.WIN :
+				(bytes.get(pos) == 'L') ? BlackjackRoundRecord.LOSS :
+				BlackjackRoundRecord.PUSH;
+		for (pos++; pos < lineEnd; pos++) {
+			switch (bytes.get(pos)) {
+			case 'B': code |= BlackjackRoundRecord.BLACKJACK; break;
+			case 'I': code |= BlackjackRoundRecord.INSURED; break;
+			case 'D': code |= BlackjackRoundRecord.DOUBLED; break;
+			case 'S': code |= BlackjackRoundRecord.SPLIT; break;
+			default: return code;
+			}
+		}
+		return code;
+	}
+
+
+	public static class Groups {
+		// Totals for each value of the grouping column, kept in an open
+		// addressing hash table of keys, with the totals in parallel 
+		// arrays.  The spread of the winnings is kept as in BlackjackStats:
+		// the running mean and the sum of squared differences from it,
+		// added hand by hand with Welford's method, and tables are added
+		// together with Chan's formulas.
+
+		private long[] keys;
+		private boolean[] used;
+		private long[] hands, wins, losses, pushes, winnings, bets;
+		private double[] meanWinnings, m2Winnings;
+		private int groupCount = 0;
+		long lines = 0;		// Lines read
+		long skipped = 0;	// Lines with fewer items than hands
+		long bytes = 0;		// Size of the file
+
+		Groups() {
+			this(64);
+		}
+
+		private Groups(int size) {
+			// An empty table with room for size / 2 groups
+			keys = new long[size]; used = new boolean[size];
+			hands = new long[size]; wins = new long[size];
+			losses = new long[size]; pushes = new long[size];
+			winnings = new long[size]; bets = new long[size];
+			meanWinnings = new double[size]; m2Winnings = new double[size];
+		}
+
+		void addHand(long key, int outcome, long win, long bet) {
+			addTotals(key, 1, 
+					(outcome & BlackjackRoundRecord.RESULT_MASK) == 
+							BlackjackRoundRecord.WIN ? 1 : 0,
+					(outcome & BlackjackRoundRecord.RESULT_MASK) == 
+							BlackjackRoundRecord.LOSS ? 1 : 0,
+					(outcome & BlackjackRoundRecord.RESULT_MASK) == 
+							BlackjackRoundRecord.PUSH ? 1 : 0,
+					win, win, 0, bet);
+		}
+
+		private void addTotals(long key, long hand, long win, long loss,
+				long push, long won, double mean, double m2, long bet) {
+			// Add the totals of some hands, whose winnings have the given
+			// mean and sum of squared differences from it, to a group
+			int i = slot(key);
+			long before = hands[i];
+			hands[i] += hand;
+			wins[i] += win;
+			losses[i] += loss;
+			pushes[i] += push;
+			winnings[i] += won;
+			bets[i] += bet;
+			double delta = mean - meanWinnings[i];
+			meanWinnings[i] += delta * hand / hands[i];
+			m2Winnings[i] += m2 + delta * delta * 
+					((double) before * hand / hands[i]);
+		}
+
+		private int slot(long key) {
+			// The slot of a key, added if it is new
+			int mask = keys.length - 1;
+			int i = (int) (mixKey(key) & mask);
+			while (used[i] && keys[i] != key) {
+				i = (i + 1) & mask;
+			}
+			if (!used[i]) {
+				if (2 * (groupCount + 1) > keys.length) {
+					grow();
+					return slot(key);
+				}
+				used[i] = true;
+				keys[i] = key;
+				groupCount++;
+			}
+			return i;
+		}
+
+		private static long mixKey(long key) {
+			key *= 0x9E3779B97F4A7C15L;
+			return key ^ (key >>> 32);
+		}
+
+		private void grow() {
+			// Double the table and put every group back in
+			Groups bigger = new Groups(keys.length * 2);
+			bigger.addGroups(this);
+			keys = bigger.keys; used = bigger.used; hands = bigger.hands;
+			wins = bigger.wins; losses = bigger.losses; 
+			pushes = bigger.pushes; winnings = bigger.winnings;
+			bets = bigger.bets; meanWinnings = bigger.meanWinnings;
+			m2Winnings = bigger.m2Winnings;
+		}
+
+		void add(Groups other) {
+			// Add the totals of another table to this one
+			addGroups(other);
+			lines += other.lines;
+			skipped += other.skipped;
+		}
+
+		private void addGroups(Groups other) {
+			for (int i = 0; i < other.keys.length; i++) {
+				if (other.used[i]) {
+					addTotals(other.keys[i], other.hands[i], other.wins[i],
+							other.losses[i], other.pushes[i], 
+							other.winnings[i], other.meanWinnings[i],
+							other.m2Winnings[i], other.bets[i]);
+				}
+			}
+		}
+
+		public String report(String column) {
+			// One line per group, in order of the grouping column
+			long[] sorted = new long[groupCount];
+			int n = 0;
+			for (int i = 0; i < keys.length; i++) {
+				if (used[i]) {
+					sorted[n++] = keys[i];
+				}
+			}
+			Arrays.sort(sorted);
+			StringBuilder report = new StringBuilder(String.format(
+					"%-12s %12s %7s %7s %7s %10s %10s %9s%n", column, 
+					"hands", "win%", "loss%", "push%", "EV/hand", 
+					"std dev", "return%"));
+			for (long key : sorted) {
+				int i = slot(key);
+				double mean = (double) winnings[i] / hands[i];
+				double variance = m2Winnings[i] / hands[i];
+				String label = column.equalsIgnoreCase("outcome") ?
+						BlackjackRoundRecord.outcomeMods((int) key) : 
+						column.equalsIgnoreCase("all") ? "all" :
+						String.valueOf(key);
+				report.append(String.format(
+						"%-12s %,12d %7.2f %7.2f %7.2f %10.3f %10.3f %9.3f%n",
+						label, hands[i], 100.0 * wins[i] / hands[i], 
+						100.0 * losses[i] / hands[i], 
+						100.0 * pushes[i] / hands[i], mean, 
+						Math.sqrt(variance),
+						100.0 * winnings[i] / Math.max(bets[i], 1)));
+			}
+			return report.toString();
+		}
+	}
+}
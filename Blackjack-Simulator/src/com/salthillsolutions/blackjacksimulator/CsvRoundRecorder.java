@@ -0,0 +1,54 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/* Writes each round to a CSV text file, in the layout described in the
+ * readme.  See BlackjackRoundRecord.csvRound for the two layouts.
+ * Rounds are encoded as ASCII bytes into one reused buffer, which is 
+ * written out whenever it holds WRITE_SIZE bytes or more.
+ */
+
+public class CsvRoundRecorder implements RoundRecorder {
+
+	// How many bytes are collected before they are written to the file
+	private static final int WRITE_SIZE = 65536;
+
+	private final OutputStream csvOut;
+	private final boolean flatCsv;
+	private final RecordBuffer buffer = new RecordBuffer(WRITE_SIZE + 4096);
+
+	public CsvRoundRecorder(String csvFile) throws IOException {
+		this(csvFile, Settings.FLATCSV);
+	}
+
+	public CsvRoundRecorder(String csvFile, boolean flatCsv) 
+			throws IOException {
+		// Note that the file is overwritten
+		this(new FileOutputStream(csvFile), flatCsv);
+	}
+
+	public CsvRoundRecorder(OutputStream csvOut, boolean flatCsv) {
+		this.csvOut = csvOut;
+		this.flatCsv = flatCsv;
+	}
+
+	public void record(BlackjackRoundRecord roundRecord) throws IOException {
+		roundRecord.csvRound(flatCsv, buffer);
+		if (buffer.length() >= WRITE_SIZE) {
+			buffer.writeTo(csvOut);
+			buffer.clear();
+		}
+	}
+
+	public void close() throws IOException {
+		// Write what is left in the buffer
+		try {
+			buffer.writeTo(csvOut);
+			buffer.clear();
+		} finally {
+			csvOut.close();
+		}
+	}
+}
@@ -0,0 +1,270 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Exact probabilities of the dealer's final hand, worked out from the
+ * cards left rather than by playing rounds.  Given the dealer's up card
+ * and the composition of the deck (the cards left of each blackjack value,
+ * 1 for an ace to 10 for any 10-point card), every order in which the
+ * dealer could draw is followed, drawing without replacement under the
+ * same rule as BlackjackStrategy.dealerMove: hit 16 or less, and a soft 17
+ * of two cards (an ace and a 6), but stand on any other 17.
+ * The result gives the chance of each outcome: a final total of 17 to 21,
+ * a bust, or a blackjack (21 with the first two cards).
+ *
+ * The composition is that of the cards not yet seen, so the up card must
+ * already be taken out.  If the dealer has checked the hole card for
+ * blackjack (as SimulationEngine does before the player's turn), ask with
+ * peeked set: the hole card then cannot make a blackjack, and the chances
+ * are those of the hands without one.
+ *
+ * Following every draw takes from a few microseconds to a millisecond, so
+ * results are kept in a cache of the most recently used compositions and
+ * up cards, of at most cacheSize entries.  The cache is not shared between
+ * threads: like the engines, each thread should have its own DealerOdds.
+ * If the chances are asked for into an array of the caller's, nothing is
+ * allocated when the cache has the answer.  A miss reuses the key and
+ * chances of the entry dropped last, so only the map's own entry is new.
+ * Run the class on its own to print the table for a full deck:
+ *
+ *   java com.salthillsolutions.blackjacksimulator.DealerOdds [decks]
+ */
+
+public class DealerOdds {
+
+	// Indexes of the outcomes: a final total of 17 to 21 is at total - 17
+	public static final int BUST = 5, BLACKJACK = 6;
+	public static final int OUTCOMES = 7;
+
+	// Cache size if none is given
+	public static final int DEFAULT_CACHE_SIZE = 4096;
+
+	private final Map<Key, double[]> cache;
+	private long hits = 0, misses = 0;
+
+	// The key looked up in the cache, and the cards not yet drawn while
+	// the dealer's draws are followed, both reused for every call; and
+	// the key and chances of the entry the cache dropped last (null for
+	// none), to be reused by the next miss
+	private final Key lookup = new Key(1, new int[11], false);
+	private final int[] left = new int[11];
+	private Key spareKey = null;
+	private double[] spareOdds = null;
+
+	public DealerOdds() {
+		this(DEFAULT_CACHE_SIZE);
+	}
+
+	public DealerOdds(final int cacheSize) {
+		// The cache drops the entry used longest ago once it is full
+		cache = new LinkedHashMap<Key, double[]>(16, 0.75f, true) {
+			protected boolean removeEldestEntry(
+					Map.Entry<Key, double[]> eldest) {
+				if (size() > cacheSize) {
+					spareKey = eldest.getKey();
+					spareOdds = eldest.getValue();
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public static void main(String[] args) {
+		// Print the chance of each outcome for every up card, from a full
+		// deck of the given number of decks (NUMBER_OF_DECKS by default)
+		int decks = (args.length > 0) ? Integer.parseInt(args[0]) :
+				Settings.NUMBER_OF_DECKS;
+		DealerOdds odds = new DealerOdds();
+		System.out.println("Dealer outcomes from " + decks + " full " +
+				((decks == 1) ? "deck" : "decks") + ", hitting two-card soft 17 " +
+				"(in %, blackjack not peeked)");
+		System.out.println(String.format("%-4s %7s %7s %7s %7s %7s %7s %7s",
+				"Up", "17", "18", "19", "20", "21", "Bust", "BJ"));
+		for (int up = 2; up <= 11; up++) {
+			int upCard = (up == 11) ? 1 : up;
+			int[] cardsLeft = fullDeck(decks);
+			cardsLeft[upCard]--;
+			double[] p = odds.probabilities(upCard, cardsLeft, false);
+			StringBuilder line = new StringBuilder(String.format("%-4s",
+					(upCard == 1) ? "A" : (upCard == 10) ? "T" :
+					String.valueOf(upCard)));
+			for (int o = 0; o < OUTCOMES; o++) {
+				line.append(String.format(" %7.3f", 100 * p[o]));
+			}
+			System.out.println(line);
+		}
+	}
+
+	public static int[] fullDeck(int decks) {
+		// The composition of a full deck: cards of each blackjack value
+		// at indexes 1 (ace) to 10 (10-point cards)
+		int[] cardsLeft = new int[11];
+		for (int v = 1; v <= 9; v++) {
+			cardsLeft[v] = 4 * decks;
+		}
+		cardsLeft[10] = 16 * decks;
+		return cardsLeft;
+	}
+
+	public static int[] composition(Deck deck) {
+		// The composition of the cards still to be dealt from a deck
+		return composition(deck, new int[11]);
+	}
+
+	public static int[] composition(Deck deck, int[] cardsLeft) {
+		// The same, written into cardsLeft (of 11 entries) and returned
+		for (int v = 1; v <= 9; v++) {
+			cardsLeft[v] = deck.cardsLeftOfValue(v);
+		}
+		cardsLeft[10] = deck.tenCardsLeft();
+		return cardsLeft;
+	}
+
+	public double[] probabilities(int upCard, Deck deck, boolean peeked) {
+		// Outcomes for the cards still to be dealt from a deck, whose up
+		// card has already been dealt
+		return probabilities(upCard, composition(deck), peeked);
+	}
+
+	public double[] probabilities(int upCard, int[] cardsLeft,
+			boolean peeked) {
+		// The chance of each outcome, indexed as above, for an up card of
+		// blackjack value 1 (ace) to 10 and the cards left of each value.
+		// If the deck runs out before the dealer can stand, that order of
+		// cards is left out, so the chances add up to less than 1.
+		double[] odds = new double[OUTCOMES];
+		probabilities(upCard, cardsLeft, peeked, odds);
+		return odds;
+	}
+
+	public void probabilities(int upCard, int[] cardsLeft, boolean peeked,
+			double[] odds) {
+		// The same, written into odds (of OUTCOMES entries)
+		if (upCard < 1 || upCard > 10 || cardsLeft.length != 11) {
+			throw new IllegalArgumentException("Up card " + upCard +
+					" with " + cardsLeft.length + " values");
+		}
+		lookup.set(upCard, cardsLeft, peeked);
+		double[] cached = cache.get(lookup);
+		if (cached != null) {
+			hits++;
+		} else {
+			misses++;
+			Key key;
+			if (spareKey != null) {
+				key = spareKey;
+				key.set(upCard, cardsLeft, peeked);
+				cached = spareOdds;
+				Arrays.fill(cached, 0);
+				spareKey = null;
+				spareOdds = null;
+			} else {
+				key = new Key(upCard, cardsLeft, peeked);
+				cached = new double[OUTCOMES];
+			}
+			System.arraycopy(cardsLeft, 0, left, 0, 11);
+			int cards = 0;
+			for (int v = 1; v <= 10; v++) {
+				cards += left[v];
+			}
+			draw(left, cards, upCard, upCard == 1, 1, 1.0, peeked, cached);
+			cache.put(key, cached);
+		}
+		System.arraycopy(cached, 0, odds, 0, OUTCOMES);
+	}
+
+	private static void draw(int[] left, int cards, int total, boolean ace,
+			int dealt, double chance, boolean peeked, double[] odds) {
+		// Add the outcomes of a dealer's hand with the given hard total
+		// (aces as 1) and number of cards, reached with the given chance.
+		// A 17 of two cards with an ace can only be soft (A6).
+		// left holds the cards not yet drawn, and is put back as it was.
+		int score = (ace && total + 10 <= 21) ? total + 10 : total;
+		if (dealt == 2 && score == 21) {
+			odds[BLACKJACK] += chance;
+			return;
+		}
+		if (total > 21) {
+			odds[BUST] += chance;
+			return;
+		}
+		if (score >= 18 || (score == 17 && !(ace && dealt == 2))) {
+			odds[score - 17] += chance;
+			return;
+		}
+
+		// If the hole card was checked, it is not the one card that would
+		// make a blackjack with the up card
+		int excluded = 0;
+		if (dealt == 1 && peeked) {
+			excluded = (total == 1) ? 10 : (total == 10) ? 1 : 0;
+		}
+		int drawable = cards - ((excluded > 0) ? left[excluded] : 0);
+		if (drawable <= 0) {
+			return;
+		}
+		for (int v = 1; v <= 10; v++) {
+			if (left[v] == 0 || v == excluded) {
+				continue;
+			}
+			double next = chance * left[v] / drawable;
+			left[v]--;
+			draw(left, cards - 1, total + v, ace || v == 1, dealt + 1, next,
+					peeked, odds);
+			left[v]++;
+		}
+	}
+
+	public long getHits() {
+		return hits;
+	}
+
+	public long getMisses() {
+		return misses;
+	}
+
+	public String toString() {
+		return String.format("Dealer odds cache: %,d entries, %,d hits, " +
+				"%,d misses", cache.size(), hits, misses);
+	}
+
+	private static final class Key {
+		// A composition and up card, as a cache key.  A key is only set
+		// again while it is not in the cache.
+		private int upCard;
+		private final int[] cardsLeft;
+		private boolean peeked;
+		private int hash;
+
+		Key(int upCard, int[] cardsLeft, boolean peeked) {
+			this.cardsLeft = new int[cardsLeft.length];
+			set(upCard, cardsLeft, peeked);
+		}
+
+		void set(int upCard, int[] cardsLeft, boolean peeked) {
+			this.upCard = upCard;
+			System.arraycopy(cardsLeft, 0, this.cardsLeft, 0,
+					this.cardsLeft.length);
+			this.peeked = peeked;
+			hash = (Arrays.hashCode(this.cardsLeft) * 31 + upCard) * 2 +
+					(peeked ? 1 : 0);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return upCard == key.upCard && peeked == key.peeked &&
+					Arrays.equals(cardsLeft, key.cardsLeft);
+		}
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.salthillsolutions.blackjacksimulator;
+
+/* How each cell of the strategy chart performs: for every situation of
+ * StrategyChart (hand class, total, dealer up card, can double, can
+ * split) and every move, the number of hands where that was the first
+ * decision, with their total and squared winnings.  A hand that is split
+ * counts once, with the winnings of all hands that came from it, under
+ * the cell where it was split.  Hands settled without a decision (such
+ * as blackjacks) are not counted.
+ *
+ * The counts are kept in flat arrays with one entry per cell (situation
+ * * MOVES + move), so adding a hand is a few array updates.  Like
+ * BlackjackStats, a DecisionCells belongs to one engine, and the cells of
+ * several engines are added together with merge.
+ */
+
+public class DecisionCells {
+
+	// The moves, in the order of the last part of a cell number
+	private static final String MOVES = "HSDP";
+	public static final int CELLS = StrategyChart.SITUATIONS * MOVES.length();
+
+	private final int betUnit;
+	private final long[] hands = new long[CELLS];
+	private final long[] winnings = new long[CELLS];
+	private final double[] squares = new double[CELLS];
+
+	public DecisionCells(int betUnit) {
+		// Returns are shown per betUnit
+		this.betUnit = betUnit;
+	}
+
+	public static DecisionCells fromSettings(BlackjackRules rules) {
+		// Cells for the bet unit in rules, or null if DECISION_CELLS is not
+		// set
+		if (!Settings.DECISION_CELLS) {
+			return null;
+		}
+		return new DecisionCells(rules.getBetUnit());
+	}
+
+	public static int cell(int situation, char move) {
+		// The cell of a move (H, S, D or P) in a situation of StrategyChart
+		return situation * MOVES.length() + MOVES.indexOf(move);
+	}
+
+	public void add(int cell, int handWinnings) {
+		// Add the winnings of one hand to its cell
+		hands[cell]++;
+		winnings[cell] += handWinnings;
+		squares[cell] += (double) handWinnings * handWinnings;
+	}
+
+	public void merge(DecisionCells other) {
+		// Add the hands of another DecisionCells
+		for (int i = 0; i < CELLS; i++) {
+			hands[i] += other.hands[i];
+			winnings[i] += other.winnings[i];
+			squares[i] += other.squares[i];
+		}
+	}
+
+	public long getHands(int cell) {
+		return hands[cell];
+	}
+
+	public double getMeanWinnings(int cell) {
+		return (hands[cell] != 0) ? (double) winnings[cell] / hands[cell] : 0;
+	}
+
+	public double getVariance(int cell) {
+		// The sample variance of the winnings of the hands in a cell
+		long n = hands[cell];
+		if (n < 2) {
+			return 0;
+		}
+		double mean = getMeanWinnings(cell);
+		return Math.max(squares[cell] - mean * winnings[cell], 0) / (n - 1);
+	}
+
+	public String toString() {
+		// A table of every cell with any hands, in the order of the
+		// strategy chart.  Return is the mean winnings per bet unit, and
+		// +/- is CONFIDENCE_Z standard errors of it.
+		StringBuilder table = new StringBuilder();
+		table.append(String.format("%-26s %4s %12s %9s %9s%n",
+				"Situation", "Move", "Hands", "Return", "+/-"));
+		for (int i = 0; i < CELLS; i++) {
+			if (hands[i] == 0) {
+				continue;
+			}
+			double error = Math.sqrt(getVariance(i) / hands[i]);
+			table.append(String.format("%-26s %4s %,12d %8.3f%% %8.3f%%%n",
+					StrategyChart.describe(i / MOVES.length()),
+					MOVES.charAt(i % MOVES.length()), hands[i],
+					100 * getMeanWinnings(i) / betUnit,
+					100 * Settings.CONFIDENCE_Z * error / betUnit));
+		}
+		return table.toString();
+	}
+
+}
@@ -1,67 +1,122 @@
 package com.salthillsolutions.blackjacksimulator;
 
 // Generic methods for decks of cards.
+// The cards are kept as one-byte card codes (see Card.code), so that
+// shuffling and dealing only move bytes around.  Card objects are only
+// handed out by dealCard, for display.
+// The deck also keeps the running count and the number of cards left of
+// each value up to date as cards are dealt, so they can be read at any
+// time without going through the dealt cards.
 
 public class Deck {
 
-	private Card[] deck;   // An array of 52 Cards, representing the deck.
+	private byte[] deck;   // 52 card codes per deck, representing the deck.
 	private int cardsUsed; // How many cards have been dealt from the deck.
+	private int runningCount;	// Count of the cards dealt so far
+	private int[] valuesLeft = new int[14];	// Cards left of each value 1-13
+	private DeckRandom random;	// This deck's own random number generator
 
 	public Deck() {
-		// Create an unshuffled deck of cards
-		deck = new Card[52*Settings.NUMBER_OF_DECKS];
+		// Create an unshuffled deck, with the number of decks in Settings
+		this(Settings.NUMBER_OF_DECKS);
+	}
+
+	public Deck(int numberOfDecks) {
+		// Create an unshuffled deck, with the generator in Settings
+		this(numberOfDecks, DeckRandom.fromSettings(0));
+	}
+
+	public Deck(int numberOfDecks, DeckRandom random) {
+		// Create an unshuffled deck of cards, shuffled with the given
+		// random number generator
+		this.random = random;
+		deck = new byte[52*numberOfDecks];
 		int cardCt = 0;	// Card counter
-		for ( int d = 0; d < Settings.NUMBER_OF_DECKS; d++) { // New deck
+		for ( int d = 0; d < numberOfDecks; d++) { // New deck
 			for ( int s = 0; s <= 3; s++ ) { // New suit
 				for ( int v = 1; v <= 13; v++ ) { // New value in suit
-					deck[cardCt] = new Card(v,s);
+					deck[cardCt] = (byte) Card.code(v,s);
 					cardCt++;
 				}
-			}	
+			}
 		}
 
 		// Since this is a new deck, no cards have been used yet
-		cardsUsed = 0;
+		resetCounters();
 	}
 
 	public void shuffle() {
 		// PShuffle all cards of the desk in a random order
-		for ( int i = 52*Settings.NUMBER_OF_DECKS - 1; i > 0; i-- ) {
-			int rand = (int)(Math.random()*(i+1));
-			Card temp = deck[i];
+		for ( int i = deck.length - 1; i > 0; i-- ) {
+			int rand = random.nextInt(i+1);
+			byte temp = deck[i];
 			deck[i] = deck[rand];
 			deck[rand] = temp;
 		}
 
 		// Since the entire deck is freshly shuffled, no cards have been used
+		resetCounters();
+	}
+
+	private void resetCounters() {
+		// Set all counters to a full, undealt deck
 		cardsUsed = 0;
+		runningCount = 0;
+		for (int v = 1; v <= 13; v++) {
+			valuesLeft[v] = deck.length / 13;
+		}
 	}
 
-	public Card dealCard() {
-		// Deals one card from the deck and returns it.
-		if (cardsUsed == 52*Settings.NUMBER_OF_DECKS)
+	public int dealCode() {
+		// Deals one card from the deck and returns its card code.
+		if (cardsUsed == deck.length)
 			// If the deck runs out, shuffle it and restart
 			// This should never happen in blackjack, since the deck
 			// is shuffled well before it is depleted.
 			shuffle();
+		int code = deck[cardsUsed];
 		cardsUsed++;
-		return deck[cardsUsed - 1];
+		runningCount += Card.codeCountValue(code);
+		valuesLeft[Card.codeValue(code)]--;
+		return code;
+	}
+
+	public Card dealCard() {
+		// Deals one card from the deck and returns it as a Card.
+		return Card.fromCode(dealCode());
 	}
-		
+
 	public int cardsLeft() {
 		// Returns the number of cards left to be dealt in the deck.
-		return 52*Settings.NUMBER_OF_DECKS - cardsUsed;
+		return deck.length - cardsUsed;
 	}
-	
+
 	public int deckCount() {
 		// Returns the current deck count, based on +1 for played 2-6 cards
 		// and -1 for played aces and 10-cards
-		int deckCount = 0;
-		for (int i = 0; i < cardsUsed; i++) {
-			deckCount += deck[i].getCardCountValue();
+		return runningCount;
+	}
+
+	public double trueCount() {
+		// Returns the deck count divided by the number of decks left
+		// to be dealt (cards left / 52).  An empty deck counts as 0.
+		if (cardsLeft() == 0) {
+			return 0;
 		}
-		
-		return deckCount;
+		return runningCount * 52.0 / cardsLeft();
+	}
+
+	public int cardsLeftOfValue(int value) {
+		// Returns the number of cards of the given value (1 to 13) left
+		// to be dealt in the deck.
+		return valuesLeft[value];
+	}
+
+	public int tenCardsLeft() {
+		// Returns the number of 10-point cards (10, jack, queen, king)
+		// left to be dealt in the deck.
+		return valuesLeft[10] + valuesLeft[11] + valuesLeft[12] + 
+				valuesLeft[13];
 	}
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,127 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.util.SplittableRandom;
+
+/* The random number generator used to shuffle a Deck.  Each deck owns its
+ * generator, so decks on different threads never share one.  The
+ * generator to use and its seed are given in the Settings class.
+ *   xoshiro    - xoshiro256**, the fastest; the default
+ *   splittable - java.util.SplittableRandom
+ *   math       - Math.random(), as in earlier versions; it cannot be
+ *                seeded, and all threads share one generator
+ */
+
+public abstract class DeckRandom {
+
+	// Return a random int from 0 (included) to bound (excluded)
+	public abstract int nextInt(int bound);
+
+	// The seed of this run, shared by every stream: SEED, or if that is
+	// 0, a seed taken from the clock the first time one is needed
+	private static long runSeed = 0;
+
+	public static DeckRandom fromSettings(int stream) {
+		// The generator named in Settings.  Engines that run side by side
+		// each pass a different stream number, so that they get different
+		// cards even when they share the same SEED.
+		return create(Settings.RANDOM_GENERATOR, seedFor(stream));
+	}
+
+	public static long seedFor(int stream) {
+		// The seed for a stream: the seed of the run mixed with the stream
+		// number
+		return mix(getSeed() + stream * 0x9E3779B97F4A7C15L);
+	}
+
+	public static synchronized long getSeed() {
+		// The seed of this run.  Setting SEED to it plays the same cards
+		// again, even if it was taken from the clock.
+		if (runSeed == 0) {
+			runSeed = (Settings.SEED != 0) ? Settings.SEED : System.nanoTime();
+		}
+		return runSeed;
+	}
+
+	public static DeckRandom create(String name, long seed) {
+		// A generator by name, with the given seed
+		if (name.equals("xoshiro")) {
+			return new Xoshiro(seed);
+		} else if (name.equals("splittable")) {
+			return new Splittable(seed);
+		} else if (name.equals("math")) {
+			return new MathRandom();
+		}
+		throw new IllegalArgumentException("Unknown random generator: " + 
+				name);
+	}
+
+	static long mix(long z) {
+		// The SplitMix64 mixing function; spreads the bits of a seed
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+
+	private static class Xoshiro extends DeckRandom {
+		// xoshiro256** by Blackman and Vigna, with its 256-bit state
+		// filled from the seed by SplitMix64
+
+		private long s0, s1, s2, s3;
+
+		Xoshiro(long seed) {
+			s0 = mix(seed += 0x9E3779B97F4A7C15L);
+			s1 = mix(seed += 0x9E3779B97F4A7C15L);
+			s2 = mix(seed += 0x9E3779B97F4A7C15L);
+			s3 = mix(seed + 0x9E3779B97F4A7C15L);
+		}
+
+		private long nextLong() {
+			long result = Long.rotateLeft(s1 * 5, 7) * 9;
+			long t = s1 << 17;
+			s2 ^= s0;
+			s3 ^= s1;
+			s1 ^= s2;
+			s0 ^= s3;
+			s2 ^= t;
+			s3 = Long.rotateLeft(s3, 45);
+			return result;
+		}
+
+		public int nextInt(int bound) {
+			// Lemire's method: multiply 32 random bits by the bound and
+			// keep the high 32 bits.  The few low results that would make
+			// the draw uneven are thrown away and drawn again.
+			long m = (nextLong() >>> 32) * bound;
+			long low = m & 0xFFFFFFFFL;
+			if (low < bound) {
+				long threshold = (0x100000000L - bound) % bound;
+				while (low < threshold) {
+					m = (nextLong() >>> 32) * bound;
+					low = m & 0xFFFFFFFFL;
+				}
+			}
+			return (int) (m >>> 32);
+		}
+	}
+
+	private static class Splittable extends DeckRandom {
+
+		private final SplittableRandom random;
+
+		Splittable(long seed) {
+			random = new SplittableRandom(seed);
+		}
+
+		public int nextInt(int bound) {
+			return random.nextInt(bound);
+		}
+	}
+
+	private static class MathRandom extends DeckRandom {
+
+		public int nextInt(int bound) {
+			return (int) (Math.random() * bound);
+		}
+	}
+}
@@ -0,0 +1,91 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/* Counters of one engine for SimulationMetrics: rounds, hands and
+ * shuffles, and the time spent in each phase of a round.  Only the
+ * engine's own thread updates the counters, as plain fields; every
+ * PUBLISH_ROUNDS rounds it copies them into an AtomicLongArray, which the
+ * metrics thread reads.  Timing every round would cost more than some
+ * phases take, so only one call of startRound in SAMPLE_INTERVAL is
+ * timed, and the phase times are given per round of the sampled calls.
+ */
+
+public class EngineMetrics {
+
+	// The phases of a round, in the order they are played
+	public static final int SHUFFLE = 0, PLAYER = 1, DEALER = 2, RECORD = 3;
+	public static final int PHASES = 4;
+
+	// Indexes of the published counters; the phase times follow SAMPLED
+	public static final int ROUNDS = 0, HANDS = 1, SHUFFLES = 2, SAMPLED = 3;
+
+	private static final int SAMPLE_INTERVAL = 64;
+	private static final int PUBLISH_ROUNDS = 1024;
+
+	private long rounds, hands, shuffles, sampledRounds;
+	private final long[] phaseNanos = new long[PHASES];
+	private long starts = 0, publishedRounds = 0;
+	private boolean sampling = false;
+	private long phaseStart;
+	private final AtomicLongArray published =
+			new AtomicLongArray(SAMPLED + 1 + PHASES);
+
+	public void startRound() {
+		// Called before a round (or a step of rounds) is played
+		sampling = (starts++ % SAMPLE_INTERVAL) == 0;
+		if (sampling) {
+			phaseStart = System.nanoTime();
+		}
+	}
+
+	public void phase(int phase) {
+		// Called when a phase ends: if this round is timed, the time since
+		// the last phase ended is added to this phase
+		if (sampling) {
+			long now = System.nanoTime();
+			phaseNanos[phase] += now - phaseStart;
+			phaseStart = now;
+		}
+	}
+
+	public void shuffled() {
+		shuffles++;
+	}
+
+	public void endRounds(int rounds, int hands) {
+		// Called after a round (or a step of rounds), with the number of
+		// rounds and player hands in it
+		this.rounds += rounds;
+		this.hands += hands;
+		if (sampling) {
+			sampledRounds += rounds;
+		}
+		if (this.rounds - publishedRounds >= PUBLISH_ROUNDS) {
+			publish();
+		}
+	}
+
+	public void publish() {
+		// Copy the counters for the metrics thread
+		published.lazySet(ROUNDS, rounds);
+		published.lazySet(HANDS, hands);
+		published.lazySet(SHUFFLES, shuffles);
+		for (int p = 0; p < PHASES; p++) {
+			published.lazySet(SAMPLED + 1 + p, phaseNanos[p]);
+		}
+		published.set(SAMPLED, sampledRounds);
+		publishedRounds = rounds;
+	}
+
+	public long get(int counter) {
+		// A published counter: ROUNDS, HANDS, SHUFFLES or SAMPLED
+		return published.get(counter);
+	}
+
+	public long getPhaseNanos(int phase) {
+		// Published time of one phase, over the SAMPLED rounds
+		return published.get(SAMPLED + 1 + phase);
+	}
+
+}
@@ -1,24 +1,33 @@
 package com.salthillsolutions.blackjacksimulator;
 
-import java.util.ArrayList;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
 
 /* Generic methods for hands of cards.
  * Blackjack-specific methods are in the BlackjackHand class.
+ * The cards are kept as card codes (see Card.code); getCard returns the
+ * matching Card object for display.  Every change to the cards goes
+ * through addCard(int), removeCard(int) or clear(), which subclasses
+ * override to keep their own totals up to date.
  */
 
 public class Hand {
 
-	protected ArrayList<Card> hand;	// The array of cards is a hand
+	protected byte[] hand;	// The array of card codes is a hand
+	protected int cardCount;	// How many cards are in the hand
+	protected int valueMask;	// Bit v is set if a card of value v is held
 
 	public Hand() {
-		// Create a Hand list that is initially empty.
-		hand = new ArrayList<Card>();  
+		// Create a Hand that is initially empty.  The array grows if a
+		// hand ever needs more cards than this.
+		hand = new byte[12];
+		cardCount = 0;
 	}
 
 	public void clear() {
 		// Discard all the cards from the hand.
-		hand.clear();
+		cardCount = 0;
+		valueMask = 0;
 	}
 
 
@@ -26,25 +35,49 @@ public class Hand {
 		// Add the card c to the hand.  c should be non-null.  (If c is
 		// null, nothing is added to the hand.)
 		if (c != null) {
-			hand.add(c);
+			addCard(c.getCode());
 		}
 	}
 
+	public void addCard(int code) {
+		// Add the card with the given card code to the hand.
+		if (cardCount == hand.length) {
+			hand = Arrays.copyOf(hand, 2*hand.length);
+		}
+		hand[cardCount] = (byte) code;
+		cardCount++;
+		valueMask |= 1 << Card.codeValue(code);
+	}
+
 	public void removeCard(Card c) {
 		// If the specified card is in the hand, it is removed.
-		hand.remove(hand.indexOf(c));
+		int code = c.getCode();
+		for (int i = 0; i < cardCount; i++) {
+			if (hand[i] == code) {
+				removeCard(i);
+				return;
+			}
+		}
 	}
 
 	public void removeCard(int position) {
 		// If the specified position is a valid position in the hand,
 		// then the card in that position is removed.
-		if (position >= 0 && position < hand.size())
-			hand.remove(position);
+		if (position >= 0 && position < cardCount) {
+			System.arraycopy(hand, position + 1, hand, position, 
+					cardCount - position - 1);
+			cardCount--;
+			// Another card of the same value may still be in the hand
+			valueMask = 0;
+			for (int i = 0; i < cardCount; i++) {
+				valueMask |= 1 << Card.codeValue(hand[i]);
+			}
+		}
 	}
 
 	public int getCardCount() {
 		// Return the number of cards in the hand.
-		return hand.size();
+		return cardCount;
 	}
 
 	public Card getCard(int position) {
@@ -52,26 +85,49 @@ public class Hand {
 		// are numbered starting from 0.  If the specified position is
 		// not the position number of a card in the hand, then null
 		// is returned.
-		if (position >= 0 && position < hand.size())
-			return (Card)hand.get(position);
+		if (position >= 0 && position < cardCount)
+			return Card.fromCode(hand[position]);
 		else
 			return null;
 	}
 	
+	public int getCardCode(int position) {
+		// Get the card code in given position.  The position must be valid.
+		return hand[position];
+	}
+	
+	public int getCardValue(int position) {
+		// Get the value (1 to 13) of the card in given position.  The
+		// position must be valid.
+		return Card.codeValue(hand[position]);
+	}
+	
 	public void sortBySuit() {
 		// Sort the hand, first by suit then by value within each suit
-		Collections.sort(hand, new CardSuitComparator());
+		sort(new CardSuitComparator());
 	}
 	
 	public void sortByValue() {
 		// Sort the hand, first by value then by suit within each value
-		Collections.sort(hand, new CardValueComparator());
+		sort(new CardValueComparator());
+	}
+	
+	private void sort(Comparator<Card> comparator) {
+		// Sort the cards as Card objects, then put the codes back in order
+		Card[] cards = new Card[cardCount];
+		for (int i = 0; i < cardCount; i++) {
+			cards[i] = Card.fromCode(hand[i]);
+		}
+		Arrays.sort(cards, comparator);
+		for (int i = 0; i < cardCount; i++) {
+			hand[i] = (byte) cards[i].getCode();
+		}
 	}
 	
 	public void displayHand() {
 		// Display each hard of the hand, in a single-line flat list
-		for (Card card : hand) {
-			System.out.print(card + " ");
+		for (int i = 0; i < cardCount; i++) {
+			System.out.print(Card.fromCode(hand[i]) + " ");
 		}
 		System.out.println("");	// Newline at end of list
 	}
@@ -79,39 +135,24 @@ public class Hand {
 	public boolean isPair() {
 		// Check if a hand of 2 cards contains a pair of the same value
 		// If more than 2 cards, this check need not be done
-		if (hand.size() != 2) {
+		if (cardCount != 2) {
 			return false;
 		}
 		
-		// Get the value of both cards
-		Card card1 = hand.get(0); Card card2 = hand.get(1);
-		
-		// Compare if the value is the same
-		if (card1.getValue() == card2.getValue()) {
-			return true;
-		} else { // The values are not the same
-			return false;
-		}
+		// Compare if the value of both cards is the same
+		return Card.codeValue(hand[0]) == Card.codeValue(hand[1]);
 	}
 	
 	public boolean isValue(int value) {
 		// Check if a hand contains at least one card of a given value
-		// Cycles through hand, returns true at the first instance of the value
-		for (Card card : hand) {
-			if (card.getValue() == value) {
-				return true;
-			}
-		}
-		
-		// Did not find a card of that value
-		return false;
+		return (valueMask & (1 << value)) != 0;
 	}
 	
 	public String toString() {
 		// Return a String with a flat list of all cards in the hand
 		String theHand = "";
-		for (Card card : hand) {
-			theHand = theHand + " " + card;
+		for (int i = 0; i < cardCount; i++) {
+			theHand = theHand + " " + Card.fromCode(hand[i]);
 		}
 		return theHand;
 	}
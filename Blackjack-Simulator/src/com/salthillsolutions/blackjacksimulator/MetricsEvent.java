@@ -0,0 +1,45 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/* One metrics report as a Java Flight Recorder event, written when
+ * METRICS_JFR is set.  The events are only kept while a recording is
+ * running, for example with -XX:StartFlightRecording on the command line.
+ */
+
+@Name("com.salthillsolutions.blackjacksimulator.Metrics")
+@Label("Simulation Metrics")
+@Category("Blackjack Simulator")
+public class MetricsEvent extends Event {
+
+	@Label("Rounds per Second")
+	double roundsPerSecond;
+
+	@Label("Hands per Second")
+	double handsPerSecond;
+
+	@Label("Shuffles per Second")
+	double shufflesPerSecond;
+
+	@Label("Shuffle ns per Round")
+	double shuffleNanos;
+
+	@Label("Player ns per Round")
+	double playerNanos;
+
+	@Label("Dealer ns per Round")
+	double dealerNanos;
+
+	@Label("Record ns per Round")
+	double recordNanos;
+
+	@Label("Write ns per Round")
+	double writeNanos;
+
+	@Label("Queue Depth")
+	long queueDepth;
+
+}
@@ -0,0 +1,364 @@
+package com.salthillsolutions.blackjacksimulator;
+
+/* The player's best move for the cards left in the deck, instead of the
+ * fixed moves of a StrategyChart.  For a hand, the dealer's up card and
+ * the cards not yet seen (including the dealer's hole card), the expected
+ * winnings of hitting, standing, doubling and splitting are worked out by
+ * following every card the player could draw, without replacement, under
+ * the rules SimulationEngine plays: double on any two cards (also after a
+ * split), split any pair of the same value, split aces take one card
+ * each, and the dealer has already checked for blackjack.
+ *
+ * To be quick enough to run inside a simulation, two approximations are
+ * made, as most calculators of this kind do.  The dealer's chances are
+ * those of the cards unseen at the decision (from DealerOdds), and are not
+ * worked out again for each card the player might draw.  A split is
+ * valued as twice one of its hands, each played from the same cards, and
+ * only pairs of the same blackjack value other than tens can be split
+ * again.
+ *
+ * While the hands the player could reach are followed, the same hand is
+ * often reached by drawing the same cards in another order.  Each value
+ * is therefore kept in a transposition table: a fixed array of entries,
+ * found by a 64-bit key made from the cards unseen at the decision, the
+ * up card, the cards drawn since, and the hand.  The key of the cards
+ * drawn is a sum with one random number per card value, so it does not
+ * depend on the order.  When two keys want the same entry, the newer one
+ * replaces the older.
+ *
+ * An OptimalPlay belongs to one engine, like its statistics.  It also
+ * counts how often its move was not the chart's, and how much better its
+ * moves were expected to do; the counts of several engines are added
+ * together with merge.
+ */
+
+public class OptimalPlay {
+
+	// The moves, in the order of the array from moveValues
+	private static final String MOVES = "HSDP";
+	public static final int HIT = 0, STAND = 1, DOUBLE = 2, SPLIT = 3;
+
+	// Entries in the transposition table if no size is given (as a power
+	// of 2): 16 bytes each, so 4 MB
+	public static final int DEFAULT_TABLE_BITS = 18;
+
+	// Kinds of values in the table: the value of hitting a hand (and
+	// then playing it best), of a two-card hand that may or may not be
+	// split again, and of splitting a pair
+	private static final int HIT_VALUE = 0, TWO_CARDS = 1,
+			TWO_CARDS_SPLIT = 2, SPLIT_VALUE = 3;
+
+	// Random numbers for the keys: one per card value, one per card value
+	// for the unseen cards, and one per kind of value, total and ace
+	private static final long[] CARD_KEYS = new long[11];
+	private static final long[] UNSEEN_KEYS = new long[11];
+	private static final long[][] HAND_KEYS = new long[4][64];
+
+	static {
+		long seed = 0x5EED0F0B1AC4BAC4L;
+		for (int v = 0; v <= 10; v++) {
+			CARD_KEYS[v] = DeckRandom.mix(seed += 0x9E3779B97F4A7C15L);
+			UNSEEN_KEYS[v] = DeckRandom.mix(seed += 0x9E3779B97F4A7C15L);
+		}
+		for (int kind = 0; kind < 4; kind++) {
+			for (int hand = 0; hand < 64; hand++) {
+				HAND_KEYS[kind][hand] =
+						DeckRandom.mix(seed += 0x9E3779B97F4A7C15L);
+			}
+		}
+	}
+
+	private final DealerOdds dealerOdds = new DealerOdds();
+
+	// The transposition table
+	private final long[] keys;
+	private final double[] values;
+	private final int mask;
+	private long lookups = 0, found = 0;
+
+	// The decision being worked out: the cards not yet drawn, the key of
+	// the cards unseen at the decision and the up card, the dealer's
+	// chances, the value of standing on each score against them, and the
+	// value of each move.  The arrays are reused for every decision.
+	private final int[] left = new int[11];
+	private int cards;
+	private long decisionKey;
+	private final double[] dealer = new double[DealerOdds.OUTCOMES];
+	private final double[] standValue = new double[22];
+	private final double[] moveValues = new double[MOVES.length()];
+
+	// How the moves compared with the chart's
+	private long decisions = 0, changed = 0;
+	private double gain = 0;
+
+	public OptimalPlay() {
+		this(DEFAULT_TABLE_BITS);
+	}
+
+	public OptimalPlay(int tableBits) {
+		// A transposition table of 2 to the power tableBits entries
+		keys = new long[1 << tableBits];
+		values = new double[1 << tableBits];
+		mask = (1 << tableBits) - 1;
+	}
+
+	public static OptimalPlay fromSettings() {
+		// Optimal play, or null if OPTIMAL_PLAY is not set
+		if (!Settings.OPTIMAL_PLAY) {
+			return null;
+		}
+		return new OptimalPlay();
+	}
+
+	public char playerMove(BlackjackHand playerHand, int upCard,
+			int[] cardsLeft) {
+		// The move with the highest expected winnings, for the dealer's up
+		// card as its blackjack value (2 to 11) and the cards unseen of
+		// each blackjack value (see DealerOdds)
+		return best(moveValues(playerHand, upCard, cardsLeft));
+	}
+
+	public char playerMove(BlackjackHand playerHand, int upCard,
+			int[] cardsLeft, char chartMove) {
+		// The same, also counting the decision against the chart's move
+		double[] moveValues = moveValues(playerHand, upCard, cardsLeft);
+		char move = best(moveValues);
+		decisions++;
+		if (move != chartMove) {
+			changed++;
+			gain += moveValues[MOVES.indexOf(move)] -
+					moveValues[MOVES.indexOf(chartMove)];
+		}
+		return move;
+	}
+
+	private static char best(double[] moveValues) {
+		// The move with the highest value; hit if none is allowed
+		int best = HIT;
+		for (int m = 0; m < MOVES.length(); m++) {
+			if (moveValues[m] > moveValues[best]) {
+				best = m;
+			}
+		}
+		return MOVES.charAt(best);
+	}
+
+	public double[] moveValues(BlackjackHand playerHand, int upCard,
+			int[] cardsLeft) {
+		// Expected winnings per bet of each move (H, S, D, P), or
+		// NEGATIVE_INFINITY for a move the hand cannot make.  The array
+		// is this OptimalPlay's own, and is filled in again by the next
+		// decision.
+		startDecision((upCard == 11) ? 1 : upCard, cardsLeft);
+		int total = playerHand.getHardTotal();
+		boolean ace = false;
+		for (int i = 0; i < playerHand.getCardCount(); i++) {
+			ace |= playerHand.getCardValue(i) == 1;
+		}
+
+		moveValues[STAND] = standValue[score(total, ace)];
+		moveValues[HIT] = hitValue(total, ace, 0);
+		moveValues[DOUBLE] = Double.NEGATIVE_INFINITY;
+		moveValues[SPLIT] = Double.NEGATIVE_INFINITY;
+		if (playerHand.getCardCount() == 2) {
+			moveValues[DOUBLE] = doubleValue(total, ace);
+			if (playerHand.isPair() && (playerHand.getCardValue(0) != 1 ||
+					!playerHand.isSplitFlag())) {
+				moveValues[SPLIT] = splitValue(
+						Math.min(playerHand.getCardValue(0), 10), 0);
+			}
+		}
+		return moveValues;
+	}
+
+	private void startDecision(int upCard, int[] cardsLeft) {
+		// Take the cards unseen, and the dealer's chances for them
+		long unseen = upCard * UNSEEN_KEYS[0];
+		cards = 0;
+		for (int v = 1; v <= 10; v++) {
+			left[v] = cardsLeft[v];
+			cards += left[v];
+			unseen += left[v] * UNSEEN_KEYS[v];
+		}
+		decisionKey = DeckRandom.mix(unseen);
+
+		dealerOdds.probabilities(upCard, left, true, dealer);
+		for (int s = 0; s <= 21; s++) {
+			// Standing wins if the dealer busts or ends below the score
+			double value = dealer[DealerOdds.BUST];
+			for (int t = 17; t <= 21; t++) {
+				if (s > t) {
+					value += dealer[t - 17];
+				} else if (s < t) {
+					value -= dealer[t - 17];
+				}
+			}
+			standValue[s] = value;
+		}
+	}
+
+	private double hitValue(int total, boolean ace, long drawn) {
+		// Value of hitting a hand with this hard total, after the cards
+		// with the key drawn, then playing it best
+		long key = decisionKey + drawn + handKey(HIT_VALUE, total, ace);
+		int entry = entry(key);
+		if (keys[entry] == key) {
+			found++;
+			return values[entry];
+		}
+		double value = 0;
+		int n = cards;
+		for (int v = 1; v <= 10; v++) {
+			if (left[v] == 0) {
+				continue;
+			}
+			double chance = (double) left[v] / n;
+			int newTotal = total + v;
+			boolean newAce = ace || v == 1;
+			if (newTotal > 21) {
+				value -= chance;
+			} else if (score(newTotal, newAce) == 21) {
+				value += chance * standValue[21];
+			} else {
+				draw(v);
+				value += chance * Math.max(
+						standValue[score(newTotal, newAce)],
+						hitValue(newTotal, newAce, drawn + CARD_KEYS[v]));
+				putBack(v);
+			}
+		}
+		keys[entry] = key;
+		values[entry] = value;
+		return value;
+	}
+
+	private double doubleValue(int total, boolean ace) {
+		// Value of doubling: twice the bet on one more card
+		double value = 0;
+		for (int v = 1; v <= 10; v++) {
+			if (left[v] == 0) {
+				continue;
+			}
+			double chance = (double) left[v] / cards;
+			int newTotal = total + v;
+			value += chance * ((newTotal > 21) ? -1 :
+					standValue[score(newTotal, ace || v == 1)]);
+		}
+		return 2 * value;
+	}
+
+	private double splitValue(int pairCard, long drawn) {
+		// Value of splitting a pair: twice the value of one hand with one
+		// card of the pair and a card drawn to it.  Split aces stand on
+		// their second card.
+		long key = decisionKey + drawn + handKey(SPLIT_VALUE, pairCard, false);
+		int entry = entry(key);
+		if (keys[entry] == key) {
+			found++;
+			return values[entry];
+		}
+		double value = 0;
+		int n = cards;
+		for (int v = 1; v <= 10; v++) {
+			if (left[v] == 0) {
+				continue;
+			}
+			double chance = (double) left[v] / n;
+			boolean ace = pairCard == 1 || v == 1;
+			if (pairCard == 1) {
+				value += chance * standValue[score(1 + v, true)];
+			} else {
+				draw(v);
+				value += chance * twoCardValue(pairCard + v, ace,
+						drawn + CARD_KEYS[v], v == pairCard && v != 10);
+				putBack(v);
+			}
+		}
+		keys[entry] = key;
+		values[entry] = 2 * value;
+		return 2 * value;
+	}
+
+	private double twoCardValue(int total, boolean ace, long drawn,
+			boolean canSplit) {
+		// Value of a hand of two cards after a split, played best
+		if (score(total, ace) == 21) {
+			return standValue[21];
+		}
+		long key = decisionKey + drawn + handKey(canSplit ? TWO_CARDS_SPLIT :
+				TWO_CARDS, total, ace);
+		int entry = entry(key);
+		if (keys[entry] == key) {
+			found++;
+			return values[entry];
+		}
+		double value = Math.max(standValue[score(total, ace)],
+				Math.max(hitValue(total, ace, drawn), doubleValue(total, ace)));
+		if (canSplit) {
+			value = Math.max(value, splitValue(total / 2, drawn));
+		}
+		keys[entry] = key;
+		values[entry] = value;
+		return value;
+	}
+
+	private void draw(int value) {
+		left[value]--;
+		cards--;
+	}
+
+	private void putBack(int value) {
+		left[value]++;
+		cards++;
+	}
+
+	private static int score(int total, boolean ace) {
+		// Blackjack score of a hard total, with one ace as 11 if it fits
+		return (ace && total <= 11) ? total + 10 : total;
+	}
+
+	private static long handKey(int kind, int total, boolean ace) {
+		return HAND_KEYS[kind][2 * total + (ace ? 1 : 0)];
+	}
+
+	private int entry(long key) {
+		// Place of a key in the table
+		lookups++;
+		return (int) (key ^ (key >>> 32)) & mask;
+	}
+
+	public void merge(OptimalPlay other) {
+		// Add the decisions of another OptimalPlay
+		decisions += other.decisions;
+		changed += other.changed;
+		gain += other.gain;
+		lookups += other.lookups;
+		found += other.found;
+	}
+
+	public long getDecisions() {
+		return decisions;
+	}
+
+	public long getChanged() {
+		return changed;
+	}
+
+	public double getGain() {
+		// Expected winnings, in bets, that the moves gained over the chart
+		return gain;
+	}
+
+	public String toString() {
+		// How the moves compared with the chart, and how well the
+		// transposition table worked
+		return String.format("Optimal play: %,d decisions, %,d (%.2f%%) " +
+				"not the chart's move, expected gain over the chart " +
+				"%.2f bets (%.5f per decision)%nTransposition table: %,d " +
+				"lookups, %.1f%% found", decisions, changed,
+				(decisions > 0) ? 100.0 * changed / decisions : 0, gain,
+				(decisions > 0) ? gain / decisions : 0, lookups,
+				(lookups > 0) ? 100.0 * found / lookups : 0);
+	}
+
+}
@@ -0,0 +1,247 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/* Runs a simulation on several threads at once.  The TOTAL_ROUNDS are
+ * split into one block of rounds per thread.  Each block is played by its
+ * own SimulationEngine, starting from a freshly shuffled deck, so the
+ * blocks are independent of each other and need no locking.  Each block
+ * writes its own output file, and the stats of all blocks are merged into
+ * a single report at the end.  While the threads play, progress is shown
+ * from snapshots of their stats, without stopping them.  If the combined
+ * snapshots reach TARGET_PRECISION, every thread is asked to stop.  If
+ * MERGE_SHARDS is set, the output files are then merged into one.
+ */
+
+public class ParallelSimulation {
+
+	// How often the threads' progress is looked at, in milliseconds
+	private static final long PROGRESS_MILLIS = 250;
+
+	public static void run(int threads) {
+		// Run without metrics
+		run(threads, null);
+	}
+
+	public static void run(int threads, SimulationMetrics metrics) {
+		// Share the rounds between the given number of threads, wait for
+		// every thread to finish, then print the combined statistics
+		System.out.println("Playing " + Settings.TOTAL_ROUNDS +
+				" rounds on " + threads + " threads");
+
+		ExecutorService pool = Executors.newFixedThreadPool(threads);
+		List<Future<BlackjackStats>> shards =
+				new ArrayList<Future<BlackjackStats>>();
+		List<Shard> blocks = new ArrayList<Shard>();
+		for (int i = 0; i < threads; i++) {
+			// Work out the block of rounds for this thread.  Rounds are
+			// numbered across the whole simulation, so that round numbers
+			// are not repeated between output files
+			int firstRound = (int) ((long) Settings.TOTAL_ROUNDS * i / threads);
+			int lastRound =
+					(int) ((long) Settings.TOTAL_ROUNDS * (i+1) / threads);
+			Shard block = new Shard(i+1, firstRound, lastRound - firstRound,
+					metrics);
+			blocks.add(block);
+			shards.add(pool.submit(block));
+		}
+		pool.shutdown();
+
+		// Collect the stats of each thread as it finishes.  While waiting,
+		// show the combined progress every UPDATE_INTERVAL rounds
+		BlackjackStats stats = new BlackjackStats();
+		long nextUpdate = Settings.UPDATE_INTERVAL;
+		for (int i = 0; i < shards.size(); i++) {
+			Future<BlackjackStats> shard = shards.get(i);
+			try {
+				while (true) {
+					try {
+						stats.merge(shard.get(PROGRESS_MILLIS, 
+								TimeUnit.MILLISECONDS));
+						break;
+					} catch (TimeoutException e) {
+						BlackjackStats progress = snapshot(blocks);
+						if (Settings.TARGET_PRECISION > 0 && progress.isPrecise(
+								Settings.TARGET_PRECISION, 
+								Settings.CONFIDENCE_Z)) {
+							stopAll(blocks);
+						}
+						if (progress.getRounds() >= nextUpdate) {
+							updateProgress(progress.getRounds(), progress);
+							nextUpdate = (progress.getRounds() / 
+									Settings.UPDATE_INTERVAL + 1) * 
+									Settings.UPDATE_INTERVAL;
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				Thread.currentThread().interrupt();
+				return;
+			} catch (ExecutionException e) {
+				// Without this thread's rounds the results would be
+				// incomplete, so stop the others and report no results
+				stopAll(blocks);
+				System.out.println("Thread " + (i+1) + " failed: " + 
+						e.getCause());
+				e.getCause().printStackTrace();
+				awaitAll(pool);
+				System.out.println("Stopped: the run is incomplete, so no " +
+						"results are shown and no files are merged");
+				return;
+			}
+		}
+
+		// Tell us we are finished, and print the statistics for all rounds
+		System.out.print("Finished! ");
+		BlackjackSimulator.updateProgress(stats.getRounds(), stats);
+		BlackjackRules rules = new BlackjackRules();
+		CountHistogram histogram = CountHistogram.fromSettings(rules);
+		DecisionCells cells = DecisionCells.fromSettings(rules);
+		OptimalPlay optimal = OptimalPlay.fromSettings();
+		for (Shard block : blocks) {
+			if (block.engine != null && histogram != null) {
+				histogram.merge(block.engine.getHistogram());
+			}
+			if (block.engine != null && cells != null) {
+				cells.merge(block.engine.getDecisionCells());
+			}
+			if (block.engine != null && optimal != null) {
+				optimal.merge(block.engine.getOptimalPlay());
+			}
+		}
+		BlackjackSimulator.printTable(histogram);
+		BlackjackSimulator.printTable(cells);
+		BlackjackSimulator.printTable(optimal);
+
+		if (Settings.MERGE_SHARDS && Settings.OUTPUT_FILE.length() > 0) {
+			String[] shardFiles = new String[threads];
+			for (int i = 0; i < threads; i++) {
+				shardFiles[i] = System.getProperty("user.dir") + "/" + 
+						shardFile(i+1);
+			}
+			String mergedFile = System.getProperty("user.dir") + "/" + 
+					Settings.OUTPUT_FILE;
+			try {
+				long rounds = ShardMerger.merge(shardFiles, mergedFile);
+				System.out.println(rounds + " rounds merged into " + 
+						mergedFile);
+			} catch (IOException e) { e.printStackTrace(); }
+		}
+	}
+
+	private static BlackjackStats snapshot(List<Shard> blocks) {
+		// The stats of all threads as of their last checkpoints
+		BlackjackStats stats = new BlackjackStats();
+		for (Shard block : blocks) {
+			SimulationEngine engine = block.engine;
+			if (engine != null) {
+				stats.merge(engine.getStats().snapshot());
+			}
+		}
+		return stats;
+	}
+
+	private static void stopAll(List<Shard> blocks) {
+		// Ask the engine of every thread to stop after its current round
+		for (Shard block : blocks) {
+			block.stopRequested = true;
+			SimulationEngine engine = block.engine;
+			if (engine != null) {
+				engine.requestStop();
+			}
+		}
+	}
+
+	private static void awaitAll(ExecutorService pool) {
+		// Wait for the threads that are still playing to stop, so that
+		// their output files are closed
+		try {
+			pool.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void updateProgress(long rounds, BlackjackStats stats) {
+		System.out.print("In progress: ");
+		BlackjackSimulator.updateProgress(rounds, stats);
+	}
+
+	public static String shardFile(int shardNum) {
+		// Return the output file name for one thread: the thread number is
+		// added before the extension of OUTPUT_FILE
+		String name = Settings.OUTPUT_FILE;
+		int dot = name.lastIndexOf('.');
+		if (dot < 0) {
+			return name + "-" + shardNum;
+		}
+		return name.substring(0, dot) + "-" + shardNum + name.substring(dot);
+	}
+
+	private static class Shard implements Callable<BlackjackStats> {
+		// One block of rounds, played on its own engine and written to its
+		// own output file
+
+		private final int shardNum;
+		private final int firstRound;
+		private final int rounds;
+		// Set once the engine exists, so its stats can be followed
+		private volatile SimulationEngine engine = null;
+		// Set if the threads should stop, before or after engine is set
+		private volatile boolean stopRequested = false;
+		private final SimulationMetrics metrics;	// null for none
+
+		Shard(int shardNum, int firstRound, int rounds, 
+				SimulationMetrics metrics) {
+			this.shardNum = shardNum;
+			this.firstRound = firstRound;
+			this.rounds = rounds;
+			this.metrics = metrics;
+		}
+
+		public BlackjackStats call() throws IOException {
+			String csvFile = System.getProperty("user.dir") + "/" +
+					shardFile(shardNum);
+			// Each thread shuffles with its own stream of random numbers
+			BlackjackRules rules = new BlackjackRules();
+			RoundRecorder recorder = 
+					RoundRecorders.fromSettings(csvFile, rules);
+			SimulationEngine engine = new SimulationEngine(
+					rules, StrategyChart.getDefault(), recorder,
+					DeckRandom.fromSettings(shardNum));
+			engine.setFilter(RoundFilters.fromSettings(shardNum));
+			engine.setHistogram(CountHistogram.fromSettings(rules));
+			engine.setDecisionCells(DecisionCells.fromSettings(rules));
+			engine.setOptimalPlay(OptimalPlay.fromSettings());
+			if (metrics != null) {
+				engine.setMetrics(metrics.addEngine());
+				metrics.addRecorder(recorder);
+			}
+			this.engine = engine;
+			if (stopRequested) {
+				engine.requestStop();
+			}
+			try {
+				engine.playRounds(firstRound, rounds, false);
+			} finally {
+				engine.close();
+			}
+			System.out.println("Thread " + shardNum + " finished " + 
+					engine.getStats().getRounds() + " rounds" + 
+					((Settings.OUTPUT_FILE.length() > 0) ? 
+					", output file: " + csvFile : ""));
+			RoundRecorders.printReport(recorder);
+			return engine.getStats();
+		}
+	}
+}
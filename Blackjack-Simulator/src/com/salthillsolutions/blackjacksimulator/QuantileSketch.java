@@ -0,0 +1,106 @@
+package com.salthillsolutions.blackjacksimulator;
+
+/* Quantiles of a stream of numbers, without keeping the numbers.  Each
+ * number is counted in a bucket whose bounds grow by a fixed ratio
+ * (1 + 2 * ACCURACY), one set of buckets for positive numbers and one for
+ * negative numbers, so any quantile is given to within ACCURACY of its
+ * true value (relative error).  Numbers smaller than 1 in size are
+ * counted as 0; the simulator only adds whole amounts and round counts.
+ * The buckets are a fixed pair of arrays, so sketches of the same size
+ * are added together with merge, for example from several threads.
+ */
+
+public class QuantileSketch {
+
+	// Relative accuracy of the quantiles, and the bucket ratio from it
+	public static final double ACCURACY = 0.01;
+	private static final double LOG_GAMMA =
+			Math.log((1 + ACCURACY) / (1 - ACCURACY));
+
+	// Enough buckets for numbers up to about 10^17 in size
+	private static final int BUCKETS = 2048;
+
+	private final long[] positive = new long[BUCKETS];
+	private final long[] negative = new long[BUCKETS];
+	private long zero = 0;
+	private long count = 0;
+	private double min = Double.POSITIVE_INFINITY;
+	private double max = Double.NEGATIVE_INFINITY;
+
+	public void add(double value) {
+		// Count one number
+		count++;
+		min = Math.min(min, value);
+		max = Math.max(max, value);
+		if (value >= 1) {
+			positive[bucket(value)]++;
+		} else if (value <= -1) {
+			negative[bucket(-value)]++;
+		} else {
+			zero++;
+		}
+	}
+
+	private static int bucket(double size) {
+		// The bucket of a number of at least 1 in size
+		return Math.min(BUCKETS - 1, (int) Math.ceil(Math.log(size) /
+				LOG_GAMMA));
+	}
+
+	private static double value(int bucket) {
+		// The number in the middle of a bucket, within ACCURACY of any
+		// number counted in it
+		return 2 * Math.exp(bucket * LOG_GAMMA) /
+				(1 + Math.exp(LOG_GAMMA));
+	}
+
+	public void merge(QuantileSketch other) {
+		// Add the numbers counted by another sketch
+		for (int i = 0; i < BUCKETS; i++) {
+			positive[i] += other.positive[i];
+			negative[i] += other.negative[i];
+		}
+		zero += other.zero;
+		count += other.count;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double quantile(double q) {
+		// The number with a share q (0 to 1) of the numbers at or below
+		// it.  The smallest and largest numbers are exact.
+		if (count == 0) {
+			return 0;
+		}
+		long rank = (long) Math.floor(q * (count - 1));
+		if (rank <= 0) {
+			return min;
+		} else if (rank >= count - 1) {
+			return max;
+		}
+		long seen = 0;
+		// From the most negative numbers up to the largest positive ones
+		for (int i = BUCKETS - 1; i >= 0; i--) {
+			seen += negative[i];
+			if (seen > rank) {
+				return Math.max(min, Math.min(max, -value(i)));
+			}
+		}
+		seen += zero;
+		if (seen > rank) {
+			return 0;
+		}
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += positive[i];
+			if (seen > rank) {
+				return Math.max(min, Math.min(max, value(i)));
+			}
+		}
+		return max;
+	}
+
+}
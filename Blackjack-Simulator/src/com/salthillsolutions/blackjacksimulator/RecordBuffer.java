@@ -0,0 +1,95 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/* A growable array of bytes that round records are encoded into, as 
+ * ASCII text.  Numbers and text are written straight into the array,
+ * without making Strings along the way, and the array is reused after
+ * each clear, so encoding a round allocates nothing once the buffer is
+ * big enough.
+ */
+
+public class RecordBuffer {
+
+	private byte[] bytes;
+	private int length = 0;
+
+	public RecordBuffer(int capacity) {
+		bytes = new byte[capacity];
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public byte[] array() {
+		// The bytes written so far are array()[0] to array()[length()-1]
+		return bytes;
+	}
+
+	public void clear() {
+		length = 0;
+	}
+
+	public RecordBuffer append(char c) {
+		// Add one ASCII character
+		ensureRoom(1);
+		bytes[length++] = (byte) c;
+		return this;
+	}
+
+	public RecordBuffer append(String text) {
+		// Add a String of ASCII characters
+		ensureRoom(text.length());
+		for (int i = 0; i < text.length(); i++) {
+			bytes[length++] = (byte) text.charAt(i);
+		}
+		return this;
+	}
+
+	public RecordBuffer append(long number) {
+		// Add a number in decimal, as String.valueOf would write it
+		ensureRoom(21);
+		if (number < 0) {
+			bytes[length++] = '-';
+		} else {
+			number = -number;
+		}
+		// Work with the negative value, which covers Long.MIN_VALUE too.
+		// The digits are written from the end, then moved into place.
+		int end = length + 19;
+		int pos = end;
+		do {
+			bytes[pos--] = (byte) ('0' - (number % 10));
+			number /= 10;
+		} while (number != 0);
+		int digits = end - pos;
+		System.arraycopy(bytes, pos + 1, bytes, length, digits);
+		length += digits;
+		return this;
+	}
+
+	public void writeTo(OutputStream out) throws IOException {
+		out.write(bytes, 0, length);
+	}
+
+	public String toString() {
+		// The bytes written so far, as text
+		char[] text = new char[length];
+		for (int i = 0; i < length; i++) {
+			text[i] = (char) bytes[i];
+		}
+		return new String(text);
+	}
+
+	private void ensureRoom(int extra) {
+		// Grow the array if it cannot take extra more bytes
+		if (length + extra > bytes.length) {
+			byte[] bigger = new byte[Math.max(length + extra, 
+					2 * bytes.length)];
+			System.arraycopy(bytes, 0, bigger, 0, length);
+			bytes = bigger;
+		}
+	}
+}
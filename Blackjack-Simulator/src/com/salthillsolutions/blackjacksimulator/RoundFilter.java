@@ -0,0 +1,27 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.util.ArrayList;
+
+/* Decides which rounds are recorded.  The engine asks the filter after
+ * each round is played, but before the round record is built, so a round
+ * that is turned down costs nothing more than the statistics, which
+ * always count every round.  See RoundFilters for the filters that can be
+ * chosen in Settings.
+ */
+
+public interface RoundFilter {
+
+	// A filter that records every round
+	public static final RoundFilter ALL = new RoundFilter() {
+		public boolean accept(int cardsLeft, int deckCount,
+				ArrayList<BlackjackHand> playerHands, 
+				BlackjackHand dealerHand) {
+			return true;
+		}
+	};
+
+	// Whether to record a round.  cardsLeft and deckCount are taken at the
+	// start of the round, the hands at its end.
+	public boolean accept(int cardsLeft, int deckCount,
+			ArrayList<BlackjackHand> playerHands, BlackjackHand dealerHand);
+}
@@ -0,0 +1,152 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.util.ArrayList;
+
+/* The round filters that can be chosen with RECORD_FILTER and
+ * RECORD_SAMPLE in Settings.  RECORD_FILTER is a list of conditions
+ * separated by commas, all of which a round must meet to be recorded:
+ *   truecount>=N        - true count of at least N at the start of the round
+ *   truecount<=N        - true count of at most N at the start of the round
+ *   split               - the player split
+ *   double              - the player doubled down
+ *   double-after-split  - the player doubled down on a split hand
+ * An empty RECORD_FILTER records every round.  RECORD_SAMPLE then keeps
+ * one round in that many, at random, of the rounds that meet the 
+ * conditions.
+ */
+
+public class RoundFilters {
+
+	// Stream numbers of sample generators start here, away from the
+	// stream numbers of the decks
+	private static final int SAMPLE_STREAMS = 1000000;
+
+	public static RoundFilter fromSettings(int stream) {
+		// The filter described by RECORD_FILTER and RECORD_SAMPLE.  The
+		// sample is drawn from its own random stream, so that it does not
+		// change the cards that are dealt.
+		RoundFilter filter = parse(Settings.RECORD_FILTER);
+		if (Settings.RECORD_SAMPLE > 1) {
+			DeckRandom random = DeckRandom.fromSettings(SAMPLE_STREAMS + 
+					stream);
+			filter = both(filter, sample(Settings.RECORD_SAMPLE, random));
+		}
+		return filter;
+	}
+
+	public static RoundFilter parse(String conditions) {
+		// A filter for a list of conditions, in the RECORD_FILTER layout
+		RoundFilter filter = RoundFilter.ALL;
+		for (String condition : conditions.split(",")) {
+			condition = condition.trim().toLowerCase();
+			if (condition.isEmpty()) {
+				continue;
+			}
+			filter = both(filter, condition(condition));
+		}
+		return filter;
+	}
+
+	private static RoundFilter condition(String condition) {
+		// A filter for one condition
+		try {
+			if (condition.startsWith("truecount>=")) {
+				return trueCountAtLeast(Double.parseDouble(
+						condition.substring("truecount>=".length())));
+			} else if (condition.startsWith("truecount<=")) {
+				return trueCountAtMost(Double.parseDouble(
+						condition.substring("truecount<=".length())));
+			}
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Bad record filter: " +
+					condition);
+		}
+		if (condition.equals("split")) {
+			return withHands(true, false);
+		} else if (condition.equals("double")) {
+			return withHands(false, true);
+		} else if (condition.equals("double-after-split")) {
+			return withHands(true, true);
+		}
+		throw new IllegalArgumentException("Unknown record filter: " + 
+				condition);
+	}
+
+	public static RoundFilter both(final RoundFilter first, 
+			final RoundFilter second) {
+		// Rounds accepted by both filters.  The first filter is asked
+		// first, so it should be the cheaper one
+		if (first == RoundFilter.ALL) {
+			return second;
+		} else if (second == RoundFilter.ALL) {
+			return first;
+		}
+		return new RoundFilter() {
+			public boolean accept(int cardsLeft, int deckCount,
+					ArrayList<BlackjackHand> playerHands, 
+					BlackjackHand dealerHand) {
+				return first.accept(cardsLeft, deckCount, playerHands, 
+						dealerHand) && second.accept(cardsLeft, deckCount,
+						playerHands, dealerHand);
+			}
+		};
+	}
+
+	public static RoundFilter trueCountAtLeast(double trueCount) {
+		// Rounds that start with a true count of at least trueCount.
+		// Compared as count * 52 >= trueCount * cardsLeft, so no division
+		// is needed
+		final double least = trueCount;
+		return new RoundFilter() {
+			public boolean accept(int cardsLeft, int deckCount,
+					ArrayList<BlackjackHand> playerHands, 
+					BlackjackHand dealerHand) {
+				return deckCount * 52.0 >= least * cardsLeft;
+			}
+		};
+	}
+
+	public static RoundFilter trueCountAtMost(double trueCount) {
+		// Rounds that start with a true count of at most trueCount
+		final double most = trueCount;
+		return new RoundFilter() {
+			public boolean accept(int cardsLeft, int deckCount,
+					ArrayList<BlackjackHand> playerHands, 
+					BlackjackHand dealerHand) {
+				return deckCount * 52.0 <= most * cardsLeft;
+			}
+		};
+	}
+
+	public static RoundFilter withHands(final boolean split, 
+			final boolean doubled) {
+		// Rounds with at least one hand that was split (if split is true)
+		// and doubled down (if doubled is true)
+		return new RoundFilter() {
+			public boolean accept(int cardsLeft, int deckCount,
+					ArrayList<BlackjackHand> playerHands, 
+					BlackjackHand dealerHand) {
+				for (int h = 0; h < playerHands.size(); h++) {
+					BlackjackHand hand = playerHands.get(h);
+					if ((!split || hand.isSplitFlag()) && 
+							(!doubled || hand.isDoubleFlag())) {
+						return true;
+					}
+				}
+				return false;
+			}
+		};
+	}
+
+	public static RoundFilter sample(final int oneIn, 
+			final DeckRandom random) {
+		// One round in oneIn, chosen at random
+		return new RoundFilter() {
+			public boolean accept(int cardsLeft, int deckCount,
+					ArrayList<BlackjackHand> playerHands, 
+					BlackjackHand dealerHand) {
+				return random.nextInt(oneIn) == 0;
+			}
+		};
+	}
+}
@@ -0,0 +1,57 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.IOException;
+
+/* Turns a binary round record file (see BinaryRoundRecorder) into the CSV
+ * layout that CsvRoundRecorder writes, so that the file can be opened in
+ * a spreadsheet as before.  Run it as:
+ *
+ *   java com.salthillsolutions.blackjacksimulator.RoundRecordConverter
+ *        blackjacksim.bjr blackjacksim.csv [flat]
+ *
+ * "flat" writes one line per round, as when FLATCSV is true; otherwise
+ * the layout follows FLATCSV.
+ */
+
+public class RoundRecordConverter {
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: RoundRecordConverter " +
+					"<binary file> <csv file> [flat]");
+			return;
+		}
+		boolean flatCsv = Settings.FLATCSV;
+		if (args.length > 2) {
+			flatCsv = args[2].equalsIgnoreCase("flat");
+		}
+		try {
+			long rounds = toCsv(args[0], args[1], flatCsv);
+			System.out.println(rounds + " rounds written to " + args[1]);
+		} catch (IOException e) { e.printStackTrace(); }
+	}
+
+	public static long toCsv(String binaryFile, String csvFile,
+			boolean flatCsv) throws IOException {
+		// Convert the whole file, one round at a time.  Returns the number
+		// of rounds converted.
+		RoundRecordReader reader = new RoundRecordReader(binaryFile);
+		RoundRecorder csvRecorder = null;
+		try {
+			csvRecorder = new CsvRoundRecorder(csvFile, flatCsv);
+			BlackjackRoundRecord roundRecord =
+					new BlackjackRoundRecord(0, 0, 0, 0);
+			long rounds = 0;
+			while (reader.next(roundRecord)) {
+				csvRecorder.record(roundRecord);
+				rounds++;
+			}
+			return rounds;
+		} finally {
+			reader.close();
+			if (csvRecorder != null) {
+				csvRecorder.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,96 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/* Reads a file written by BinaryRoundRecorder one round at a time, so a
+ * file of any size can be read without holding it in memory.  A file
+ * that was compressed with GZIP is decompressed as it is read.  The header
+ * is read when the reader is opened; each call to next then fills a 
+ * record with the following round:
+ *
+ *   BlackjackRoundRecord roundRecord = new BlackjackRoundRecord(0, 0, 0, 0);
+ *   while (reader.next(roundRecord)) { ... }
+ */
+
+public class RoundRecordReader {
+
+	private final DataInputStream in;
+	private final BlackjackRules rules;	// Rules of the run, from the header
+	private final long seed;
+	private final String randomGenerator;
+	private final boolean delta;	// Rounds are delta encoded
+
+	// Values of the last round read, for delta encoding
+	private int lastRoundNum = 0, lastShuffleNum = 0, lastCardsLeft = 0;
+
+	public RoundRecordReader(String file) throws IOException {
+		this(new FileInputStream(file));
+	}
+
+	public RoundRecordReader(InputStream in) throws IOException {
+		this.in = new DataInputStream(new BufferedInputStream(
+				RoundRecorders.decompressed(in), 65536));
+		// Read the header, and check that this is a file we can read
+		if (this.in.readInt() != BinaryRoundRecorder.MAGIC) {
+			throw new IOException("Not a binary round record file");
+		}
+		int version = this.in.readUnsignedShort();
+		if (version < 1 || version > BinaryRoundRecorder.VERSION) {
+			throw new IOException("Unknown round record file version " +
+					version);
+		}
+		int numberOfDecks = this.in.readInt();
+		int cutCardPercentage = this.in.readInt();
+		int betUnit = this.in.readInt();
+		int handsPerRound = this.in.readInt();
+		rules = new BlackjackRules(numberOfDecks, cutCardPercentage, betUnit,
+				handsPerRound);
+		seed = this.in.readLong();
+		randomGenerator = this.in.readUTF();
+		int flags = (version >= 2) ? this.in.readUnsignedByte() : 0;
+		delta = (flags & BinaryRoundRecorder.DELTA) != 0;
+	}
+
+	public BlackjackRules getRules() {
+		return rules;
+	}
+
+	public long getSeed() {
+		// The seed the run shuffled with; setting SEED to it plays the same
+		// cards again.  Files written by older versions hold 0 if the seed
+		// came from the clock.
+		return seed;
+	}
+
+	public String getRandomGenerator() {
+		return randomGenerator;
+	}
+
+	public boolean next(BlackjackRoundRecord roundRecord) throws IOException {
+		// Fill roundRecord with the next round.  Returns false, leaving
+		// the record as it was, once every round has been read.
+		in.mark(1);
+		if (in.read() < 0) {
+			return false;
+		}
+		in.reset();
+		if (delta) {
+			roundRecord.readBinary(in, lastRoundNum, lastShuffleNum,
+					lastCardsLeft);
+			lastRoundNum = roundRecord.getRoundNum();
+			lastShuffleNum = roundRecord.getShuffleNum();
+			lastCardsLeft = roundRecord.getCardsLeft();
+		} else {
+			roundRecord.readBinary(in);
+		}
+		return true;
+	}
+
+	public void close() throws IOException {
+		in.close();
+	}
+}
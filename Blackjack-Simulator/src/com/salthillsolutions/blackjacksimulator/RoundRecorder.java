@@ -0,0 +1,24 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.IOException;
+
+/* Receives the record of every round played by a SimulationEngine.  Each
+ * engine has its own recorder, so engines running side by side never
+ * write to the same output.
+ */
+
+public interface RoundRecorder {
+
+	// A recorder that throws every round away, for runs where only the
+	// statistics are wanted
+	public static final RoundRecorder NONE = new RoundRecorder() {
+		public void record(BlackjackRoundRecord roundRecord) { }
+		public void close() { }
+	};
+
+	// Save the record of one round
+	public void record(BlackjackRoundRecord roundRecord) throws IOException;
+
+	// Called once all rounds have been played
+	public void close() throws IOException;
+}
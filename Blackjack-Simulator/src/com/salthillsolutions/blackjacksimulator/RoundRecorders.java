@@ -0,0 +1,98 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.BufferedInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/* Opens the recorder for an output file in the format chosen in Settings,
+ * so that every way of running the simulation writes the same kind of
+ * file.  Compressed output is always written on the writer thread of an
+ * AsyncRoundRecorder, so the simulation never waits for the compression.
+ */
+
+public class RoundRecorders {
+
+	// Size of the output queue when the file is compressed but no
+	// OUTPUT_QUEUE_SIZE is set
+	private static final int DEFAULT_QUEUE_SIZE = 4096;
+
+	public static RoundRecorder fromSettings(String file, BlackjackRules rules)
+			throws IOException {
+		// A binary file if BINARY_OUTPUT is set, otherwise a CSV file,
+		// written on its own thread if OUTPUT_QUEUE_SIZE is set or the
+		// file is compressed.  Nothing is written if OUTPUT_FILE is empty.
+		RoundRecorder recorder;
+		if (Settings.OUTPUT_FILE.length() == 0) {
+			return RoundRecorder.NONE;
+		} else if (Settings.BINARY_OUTPUT) {
+			recorder = new BinaryRoundRecorder(openOutput(file), rules,
+					Settings.DELTA_ENCODING);
+		} else {
+			recorder = new CsvRoundRecorder(openOutput(file), 
+					Settings.FLATCSV);
+		}
+		int queueSize = Settings.OUTPUT_QUEUE_SIZE;
+		if (queueSize <= 0 && Settings.COMPRESSION_LEVEL > 0) {
+			queueSize = DEFAULT_QUEUE_SIZE;
+		}
+		if (queueSize > 0) {
+			recorder = new AsyncRoundRecorder(recorder, queueSize, 
+					Settings.OUTPUT_QUEUE_FULL.equalsIgnoreCase("drop") ?
+					AsyncRoundRecorder.DROP : AsyncRoundRecorder.BLOCK);
+		}
+		return recorder;
+	}
+	
+	public static OutputStream openOutput(String file) throws IOException {
+		// The output file, written in the way chosen by OUTPUT_SINK, and
+		// compressed if COMPRESSION_LEVEL is set.  Note that the file is
+		// overwritten
+		OutputStream out;
+		if (Settings.OUTPUT_SINK.equalsIgnoreCase("stream")) {
+			out = new FileOutputStream(file);
+		} else {
+			out = new ChannelOutputSink(file, 
+					Settings.OUTPUT_SINK.equalsIgnoreCase("mapped"));
+		}
+		if (Settings.COMPRESSION_LEVEL > 0) {
+			out = new GzipOutput(out, Settings.COMPRESSION_LEVEL);
+		}
+		return out;
+	}
+	
+	public static InputStream decompressed(InputStream in) 
+			throws IOException {
+		// The stream itself, or the decompressed data if it starts like a
+		// GZIP file
+		BufferedInputStream buffered = new BufferedInputStream(in, 65536);
+		buffered.mark(2);
+		int first = buffered.read();
+		int second = buffered.read();
+		buffered.reset();
+		if (first == 0x1F && second == 0x8B) {
+			return new GZIPInputStream(buffered, 65536);
+		}
+		return buffered;
+	}
+	
+	public static void printReport(RoundRecorder recorder) {
+		// Show how the output queue coped, if there was one
+		if (recorder instanceof AsyncRoundRecorder) {
+			System.out.println(recorder);
+		}
+	}
+	
+	private static class GzipOutput extends GZIPOutputStream {
+		// A GZIP stream with a chosen compression level (1 = fastest,
+		// 9 = smallest)
+		
+		GzipOutput(OutputStream out, int level) throws IOException {
+			super(out, 65536);
+			def.setLevel(level);
+		}
+	}
+}
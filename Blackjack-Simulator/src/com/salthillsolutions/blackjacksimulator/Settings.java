@@ -43,7 +43,132 @@ public class Settings {
 	public static final Boolean FLATCSV = false;
 	
 	// Name of output file with blackjack hand data.  The file will be
-	// stored in the directory where the program is running.
+	// stored in the directory where the program is running.  Leave empty
+	// to play without writing any rounds (for example with
+	// COUNT_HISTOGRAM, when only the statistics are needed).
 	public static final String OUTPUT_FILE = "blackjacksim.csv";
 	
+	// If true, the output file is written in a compact binary format
+	// instead of CSV, which is much smaller and faster to write (change
+	// OUTPUT_FILE to match, for example blackjacksim.bjr).  The
+	// RoundRecordConverter class turns it back into the CSV layout.
+	public static final Boolean BINARY_OUTPUT = false;
+	
+	// How the output file is written: "channel" (through a large buffer
+	// straight to the file), "mapped" (through a memory-mapped window of
+	// the file; not on Windows, where "channel" is used instead) or
+	// "stream" (a plain FileOutputStream)
+	public static final String OUTPUT_SINK = "channel";
+	
+	// If more than 0, the output file is compressed with GZIP at this
+	// level (1 = fastest, 9 = smallest; give OUTPUT_FILE a name ending in
+	// .gz).  The compression is done by the output thread (see
+	// OUTPUT_QUEUE_SIZE), which is started even if the queue size is 0.
+	public static final int COMPRESSION_LEVEL = 0;
+	
+	// For binary output: write the round number, deck number and cards
+	// left as the difference from the round before, which compresses far
+	// better.  RoundRecordReader undoes this as it reads.
+	public static final Boolean DELTA_ENCODING = false;
+	
+	// Which rounds are written to the output file; the statistics always
+	// count every round.  A list of conditions separated by commas, which
+	// a round must all meet: "truecount>=N", "truecount<=N" (at the start
+	// of the round), "split", "double", "double-after-split".  Leave empty
+	// to write every round.  For example: "truecount>=3,split"
+	public static final String RECORD_FILTER = "";
+	
+	// Write only one in this many of the rounds that pass RECORD_FILTER,
+	// picked at random.  1 writes them all.
+	public static final int RECORD_SAMPLE = 1;
+	
+	// If more than 0, the output file is written by a separate thread, so
+	// the simulation does not wait for the disk.  Up to this many rounds
+	// can wait to be written.  When that many are waiting, the simulation
+	// either waits too ("block") or leaves those rounds out of the file
+	// ("drop").  The number of rounds dropped is shown at the end.
+	public static final int OUTPUT_QUEUE_SIZE = 0;
+	public static final String OUTPUT_QUEUE_FULL = "block";
+	
+	// Name of the player's strategy chart.  If a file with this name is in
+	// the directory where the program is running, the player plays from
+	// it; otherwise the built-in chart (basic-strategy.txt) is used.
+	public static final String STRATEGY_FILE = "strategy.txt";
+	
+	// Number of threads that play rounds at the same time.  Each thread
+	// has its own deck and statistics, and writes its own output file,
+	// named after OUTPUT_FILE with the thread number added (for example
+	// blackjacksim-1.csv).  Set to 0 to use one thread per processor.
+	// Keep at 1 when playing manually.
+	public static final int THREADS = 1;
+	
+	// If true, the output files of all threads are merged into one file
+	// named OUTPUT_FILE at the end of the run, with the rounds and decks
+	// numbered again across the whole run (see ShardMerger).  The files
+	// of each thread are kept.
+	public static final Boolean MERGE_SHARDS = false;
+	
+	// Random number generator used to shuffle the deck: "xoshiro",
+	// "splittable" or "math" (see the DeckRandom class)
+	public static final String RANDOM_GENERATOR = "xoshiro";
+	
+	// Seed for the random number generator.  The same seed plays the same
+	// cards again.  Set to 0 to take a new seed from the clock every run;
+	// binary output files record the seed that was used.
+	public static final long SEED = 0;
+	
+	// If true, the winnings of every round are also grouped by the true
+	// count and by the cards left at the start of the round, and a table
+	// of the groups is shown at the end of the run.  Cards left are
+	// grouped in steps of COUNT_HISTOGRAM_STEP cards.
+	public static final Boolean COUNT_HISTOGRAM = false;
+	public static final int COUNT_HISTOGRAM_STEP = 26;
+	
+	// If true, every dealt hand is also counted under the cell of the
+	// strategy chart where its first decision was made (situation and
+	// move), and a table of how each cell did is shown at the end of the
+	// run.  A split hand counts once, with the winnings of all its hands.
+	public static final Boolean DECISION_CELLS = false;
+	
+	// If true, the player's moves are not taken from the strategy chart,
+	// but worked out for the cards not yet seen (see OptimalPlay), and the
+	// end of the run shows how often and by how much they beat the chart.
+	// Much slower than the chart.
+	public static final Boolean OPTIMAL_PLAY = false;
+	
+	// If more than 0, the number of rounds, hands and shuffles per
+	// second, the time taken by each phase of a round, and the rounds
+	// waiting to be written, are shown every this many seconds (see
+	// SimulationMetrics).  They can also be read over JMX, for example
+	// with JConsole.  0 turns the metrics off.
+	public static final int METRICS_INTERVAL = 0;
+	
+	// If true, each metrics report is also written as a Java Flight
+	// Recorder event, kept when the program runs with a recording
+	// (-XX:StartFlightRecording)
+	public static final Boolean METRICS_JFR = false;
+	
+	// If more than 0, the simulation stops before TOTAL_ROUNDS once the
+	// edge (winnings / money bet) is known to within this much either
+	// side, for example 0.001 for +/- 0.1%.  The check is made every few
+	// thousand rounds, on the combined stats of all threads.
+	public static final double TARGET_PRECISION = 0;
+	
+	// Width of the confidence intervals shown with the stats, and used
+	// for TARGET_PRECISION, in standard errors: 1.96 for 95% confidence,
+	// 2.58 for 99%
+	public static final double CONFIDENCE_Z = 1.96;
+	
+	// If more than 0, instead of one simulation of TOTAL_ROUNDS, this many
+	// bankrolls are followed (see BankrollSimulation).  Each starts at
+	// BANKROLL and plays until it is ruined (less than one BET_UNIT left),
+	// reaches BANKROLL_TARGET (0 for no target), or has played
+	// SESSION_ROUNDS rounds.  They are shared between THREADS threads,
+	// each playing its bankrolls one after another.  No output file is
+	// written.
+	public static final int BANKROLL_TRAJECTORIES = 0;
+	public static final long BANKROLL = 100000;
+	public static final long BANKROLL_TARGET = 0;
+	public static final int SESSION_ROUNDS = 100000;
+	
 }
\ No newline at end of file
@@ -0,0 +1,340 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+/* Merges the output files of several shards (threads, or separate runs of
+ * the simulator) into one file, in a single pass that only holds one 
+ * round of each shard in memory.  Rounds are taken in order of their
+ * round number in their own file; rounds with the same number are taken
+ * in the order the shards were given, so the result is always the same.
+ * In the merged file the rounds are numbered again from 1, and every
+ * deck (a shuffle number within one shard) gets a new number of its own,
+ * in the order the decks first appear.
+ *
+ * The shards must all be CSV files of the same layout, or all binary 
+ * files (see BinaryRoundRecorder); compressed files are read directly.
+ * The merged file is written in the same format, through the sink and
+ * compression chosen in Settings; a merged binary file takes the seed
+ * and generator in its header from the first shard, and can hold at most
+ * Integer.MAX_VALUE rounds (the merge stops with an error past that).
+ * Run it as:
+ *
+ *   java com.salthillsolutions.blackjacksimulator.ShardMerger
+ *        blackjacksim.csv blackjacksim-1.csv blackjacksim-2.csv ...
+ */
+
+public class ShardMerger {
+
+	public static void main(String[] args) {
+		if (args.length < 2) {
+			System.out.println("Usage: ShardMerger <merged file> " +
+					"<shard file> <shard file> ...");
+			return;
+		}
+		String[] shardFiles = new String[args.length - 1];
+		System.arraycopy(args, 1, shardFiles, 0, shardFiles.length);
+		try {
+			long rounds = merge(shardFiles, args[0]);
+			System.out.println(rounds + " rounds merged into " + args[0]);
+		} catch (IOException e) { e.printStackTrace(); }
+	}
+
+	public static long merge(String[] shardFiles, String mergedFile)
+			throws IOException {
+		// Merge the shards into mergedFile, and return the number of 
+		// rounds written
+		Shard[] shards = new Shard[shardFiles.length];
+		OutputStream out = null;
+		BinaryRoundRecorder binaryOut = null;
+		try {
+			for (int i = 0; i < shards.length; i++) {
+				shards[i] = openShard(shardFiles[i], i);
+				if (shards[i].isBinary() != shards[0].isBinary()) {
+					throw new IOException("Cannot merge binary and CSV " +
+							"files: " + shardFiles[i]);
+				}
+			}
+			out = RoundRecorders.openOutput(mergedFile);
+			if (shards.length > 0 && shards[0].isBinary()) {
+				// The header describes the first shard, not this run
+				RoundRecordReader first = ((BinaryShard) shards[0]).reader;
+				binaryOut = new BinaryRoundRecorder(out, first.getRules(),
+						Settings.DELTA_ENCODING, first.getSeed(),
+						first.getRandomGenerator());
+			}
+
+			// The shard whose next round comes first is always at the 
+			// head of the queue
+			PriorityQueue<Shard> queue = new PriorityQueue<Shard>(
+					Math.max(shards.length, 1), new Comparator<Shard>() {
+				public int compare(Shard a, Shard b) {
+					if (a.roundNum != b.roundNum) {
+						return (a.roundNum < b.roundNum) ? -1 : 1;
+					}
+					return a.shardNum - b.shardNum;
+				}
+			});
+			for (Shard shard : shards) {
+				if (shard.next()) {
+					queue.add(shard);
+				}
+			}
+
+			RecordBuffer buffer = new RecordBuffer(1 << 17);
+			long roundNum = 0;
+			int shuffleNum = 0;
+			while (!queue.isEmpty()) {
+				Shard shard = queue.poll();
+				// A new deck of this shard gets the next deck number
+				if (shard.shuffleNum != shard.lastShuffleNum) {
+					shard.lastShuffleNum = shard.shuffleNum;
+					shard.mergedShuffleNum = ++shuffleNum;
+				}
+				roundNum++;
+				if (binaryOut != null) {
+					// Binary files number their rounds with an int
+					if (roundNum > Integer.MAX_VALUE) {
+						throw new IOException("Too many rounds for a binary " +
+								"file: more than " + Integer.MAX_VALUE);
+					}
+					((BinaryShard) shard).write(binaryOut, (int) roundNum);
+				} else {
+					((CsvShard) shard).write(buffer, roundNum);
+					if (buffer.length() >= (1 << 16)) {
+						buffer.writeTo(out);
+						buffer.clear();
+					}
+				}
+				if (shard.next()) {
+					queue.add(shard);
+				}
+			}
+			buffer.writeTo(out);
+			return roundNum;
+		} finally {
+			for (Shard shard : shards) {
+				if (shard != null) {
+					shard.close();
+				}
+			}
+			if (binaryOut != null) {
+				binaryOut.close();
+			} else if (out != null) {
+				out.close();
+			}
+		}
+	}
+
+	private static Shard openShard(String file, int shardNum) 
+			throws IOException {
+		// A binary shard if the file starts like one, otherwise CSV
+		BufferedInputStream in = new BufferedInputStream(
+				RoundRecorders.decompressed(new FileInputStream(file)), 65536);
+		in.mark(4);
+		int magic = 0;
+		for (int i = 0; i < 4; i++) {
+			magic = (magic << 8) | (in.read() & 0xFF);
+		}
+		in.reset();
+		if (magic == BinaryRoundRecorder.MAGIC) {
+			return new BinaryShard(in, shardNum);
+		}
+		return new CsvShard(in, shardNum);
+	}
+
+
+	private static abstract class Shard {
+		// One input file, positioned on its next round
+
+		final int shardNum;		// Position in the list of shards
+		long roundNum;			// Round and deck number of the next round,
+		int shuffleNum;			// as written in this shard
+		int lastShuffleNum = -1;	// Deck number of the round before
+		int mergedShuffleNum;	// Deck number of that deck in the output
+
+		Shard(int shardNum) {
+			this.shardNum = shardNum;
+		}
+
+		abstract boolean isBinary();
+
+		// Read the next round; false at the end of the file
+		abstract boolean next() throws IOException;
+
+		abstract void close() throws IOException;
+	}
+
+	private static class BinaryShard extends Shard {
+
+		final RoundRecordReader reader;
+		final BlackjackRoundRecord roundRecord = 
+				new BlackjackRoundRecord(0, 0, 0, 0);
+
+		BinaryShard(InputStream in, int shardNum) throws IOException {
+			super(shardNum);
+			reader = new RoundRecordReader(in);
+		}
+
+		boolean isBinary() {
+			return true;
+		}
+
+		boolean next() throws IOException {
+			if (!reader.next(roundRecord)) {
+				return false;
+			}
+			roundNum = roundRecord.getRoundNum();
+			shuffleNum = roundRecord.getShuffleNum();
+			return true;
+		}
+
+		void write(BinaryRoundRecorder out, int mergedRoundNum) 
+				throws IOException {
+			roundRecord.renumber(mergedRoundNum, mergedShuffleNum);
+			out.record(roundRecord);
+		}
+
+		void close() throws IOException {
+			reader.close();
+		}
+	}
+
+	private static class CsvShard extends Shard {
+		// The lines of one round: one line in the flat layout, one line
+		// per hand otherwise.  Only the round and deck numbers at the
+		// start of each line are read; the rest is copied as it is.
+
+		private final InputStream in;
+		private final byte[] chunk = new byte[65536];
+		private int chunkPos = 0, chunkEnd = 0;
+
+		// The lines of the next round, and where each line starts
+		private final RecordBuffer lines = new RecordBuffer(1024);
+		private int[] lineStarts = new int[8];
+		private int lineCount = 0;
+
+		// The first line of the round after, once it has been read
+		private final RecordBuffer nextLine = new RecordBuffer(256);
+		private boolean haveNextLine = false;
+
+		CsvShard(InputStream in, int shardNum) {
+			super(shardNum);
+			this.in = in;
+		}
+
+		boolean isBinary() {
+			return false;
+		}
+
+		boolean next() throws IOException {
+			// Collect every line with the round number of the first one
+			lines.clear();
+			lineCount = 0;
+			if (!haveNextLine && !readLine(nextLine)) {
+				return false;
+			}
+			roundNum = parseNumber(nextLine.array(), 0, 0);
+			shuffleNum = (int) parseNumber(nextLine.array(), 0, 1);
+			do {
+				addLine();
+				haveNextLine = readLine(nextLine);
+			} while (haveNextLine && 
+					parseNumber(nextLine.array(), 0, 0) == roundNum);
+			return true;
+		}
+
+		private void addLine() {
+			// Move nextLine to the end of lines
+			if (lineCount == lineStarts.length) {
+				int[] bigger = new int[2 * lineStarts.length];
+				System.arraycopy(lineStarts, 0, bigger, 0, lineCount);
+				lineStarts = bigger;
+			}
+			lineStarts[lineCount++] = lines.length();
+			for (int i = 0; i < nextLine.length(); i++) {
+				lines.append((char) nextLine.array()[i]);
+			}
+		}
+
+		private boolean readLine(RecordBuffer line) throws IOException {
+			// Read one line, with its '\n', into line.  False at the end of
+			// the file
+			line.clear();
+			while (true) {
+				if (chunkPos == chunkEnd) {
+					chunkEnd = in.read(chunk);
+					chunkPos = 0;
+					if (chunkEnd <= 0) {
+						chunkEnd = 0;
+						if (line.length() == 0) {
+							return false;
+						}
+						// A last line without '\n'
+						line.append('\n');
+						return true;
+					}
+				}
+				byte b = chunk[chunkPos++];
+				line.append((char) b);
+				if (b == '\n') {
+					return true;
+				}
+			}
+		}
+
+		void write(RecordBuffer out, long mergedRoundNum) {
+			// Copy the lines of the round with the new round and deck
+			// numbers in place of the first two fields
+			byte[] bytes = lines.array();
+			for (int l = 0; l < lineCount; l++) {
+				int start = lineStarts[l];
+				int end = (l + 1 < lineCount) ? lineStarts[l + 1] : 
+						lines.length();
+				int rest = fieldStart(bytes, start, 2);
+				out.append(mergedRoundNum).append(',')
+						.append(mergedShuffleNum).append(',');
+				for (int i = rest; i < end; i++) {
+					out.append((char) bytes[i]);
+				}
+			}
+		}
+
+		private static int fieldStart(byte[] bytes, int lineStart, 
+				int field) {
+			// Position of the first character of a field in a line
+			int pos = lineStart;
+			for (int f = 0; f < field; f++) {
+				while (bytes[pos] != ',') {
+					pos++;
+				}
+				pos++;
+			}
+			return pos;
+		}
+
+		private static long parseNumber(byte[] bytes, int lineStart, 
+				int field) {
+			// The whole number in a field of a line
+			int pos = fieldStart(bytes, lineStart, field);
+			boolean negative = bytes[pos] == '-';
+			if (negative) {
+				pos++;
+			}
+			long number = 0;
+			while (bytes[pos] >= '0' && bytes[pos] <= '9') {
+				number = number * 10 + (bytes[pos++] - '0');
+			}
+			return negative ? -number : number;
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+}
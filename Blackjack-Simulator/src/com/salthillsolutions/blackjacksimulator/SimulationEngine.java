@@ -0,0 +1,824 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/* Plays rounds of blackjack on its own deck, and keeps the results in its
+ * own statistics.  Nothing here is shared between engines, so several of
+ * them can play at the same time, each on its own thread.
+ */
+
+public class SimulationEngine {
+
+	// TODO: Surrender option is not available in this game!
+
+	// The table rules, and the betting unit taken from them
+	// betUnit is not set to 1 since it is an int, and a blackjack earns 1.5
+	private final BlackjackRules rules;
+	private final int betUnit;
+
+	// The chart the player's moves are taken from
+	private final StrategyChart strategy;
+
+	// The deck, statistics and recorder belong to this engine only
+	private final Deck deck;
+	private final BlackjackStats stats = new BlackjackStats();
+	private final RoundRecorder recorder;
+	private RoundFilter filter = RoundFilter.ALL;	// Which rounds to record
+	private CountHistogram histogram = null;	// Optional, see setHistogram
+	private EngineMetrics metrics = null;		// Optional, see setMetrics
+	private OptimalPlay optimal = null;		// Optional, see setOptimalPlay
+	private final int[] unseen = new int[11];	// Filled by unseenCards
+
+	// Optional, see setDecisionCells.  For each hand in playerHands,
+	// handRoot is the dealt hand it came from (itself, unless it was split
+	// off); for each dealt hand, rootCell is the cell of its first decision
+	// (-1 for none yet) and rootWinnings the winnings of all its hands.
+	private DecisionCells cells = null;
+	private int[] handRoot = new int[4];
+	private final int[] rootCell, rootWinnings;
+
+	// playRounds stops early once the edge is known to within this much
+	// (0 = never), or when another thread asks it to stop
+	private double targetPrecision = 0;
+	private volatile boolean stopRequested = false;
+
+	// Round and shuffle counters for the rounds played by this engine
+	private int roundNum = 0;
+	private int shuffleNum = 0;
+
+	// If a round is to begin with fewer cards in the deck than this number,
+	// all cards are reshuffled and a new deck is started.
+	private final int cardsLeftToShuffle;
+
+	// The hands are kept from one round to the next and reset in place,
+	// so that playing a round does not create any new objects.  handPool
+	// holds every player hand made so far; playerHands holds the ones in
+	// use this round.  The pool only grows when a round has more split
+	// hands than any round before it.
+	private final BlackjackHand dealerHand = new BlackjackHand(0);
+	private final ArrayList<BlackjackHand> handPool = 
+			new ArrayList<BlackjackHand>();
+	private final ArrayList<BlackjackHand> playerHands = 
+			new ArrayList<BlackjackHand>();
+
+	// This is an instance for a single round; it is reset at the start of
+	// each round, and its information is handed to the recorder after
+	// every round  
+	private final BlackjackRoundRecord roundRecord = 
+			new BlackjackRoundRecord(0, 0, 0, 0);
+
+
+	public SimulationEngine() {
+		// An engine with the rules in Settings, which records nothing
+		this(new BlackjackRules(), RoundRecorder.NONE);
+	}
+
+	public SimulationEngine(BlackjackRules rules, RoundRecorder recorder) {
+		// An engine playing from the default strategy chart
+		this(rules, StrategyChart.getDefault(), recorder);
+	}
+
+	public SimulationEngine(BlackjackRules rules, StrategyChart strategy,
+			RoundRecorder recorder) {
+		// An engine shuffling with the generator in Settings
+		this(rules, strategy, recorder, DeckRandom.fromSettings(0));
+	}
+
+	public SimulationEngine(BlackjackRules rules, StrategyChart strategy,
+			RoundRecorder recorder, DeckRandom random) {
+		this.rules = rules;
+		this.strategy = strategy;
+		this.betUnit = rules.getBetUnit();
+		this.cardsLeftToShuffle = rules.getCardsLeftToShuffle();
+		this.deck = new Deck(rules.getNumberOfDecks(), random);
+		this.recorder = recorder;
+		this.rootCell = new int[rules.getHandsPerRound()];
+		this.rootWinnings = new int[rules.getHandsPerRound()];
+	}
+
+	public void setFilter(RoundFilter filter) {
+		// Record only the rounds this filter accepts
+		this.filter = filter;
+	}
+
+	public void setHistogram(CountHistogram histogram) {
+		// Also add every round to this histogram (null for none)
+		this.histogram = histogram;
+	}
+
+	public CountHistogram getHistogram() {
+		return histogram;
+	}
+
+	public void setMetrics(EngineMetrics metrics) {
+		// Count the rounds, hands and shuffles, and time the phases of
+		// some rounds, for SimulationMetrics (null for none)
+		this.metrics = metrics;
+	}
+
+	public void setDecisionCells(DecisionCells cells) {
+		// Also count every dealt hand under the first decision made on it
+		// (null for none)
+		this.cells = cells;
+	}
+
+	public DecisionCells getDecisionCells() {
+		return cells;
+	}
+
+	public void setOptimalPlay(OptimalPlay optimal) {
+		// Play the moves of optimal instead of the strategy chart (null to
+		// play the chart)
+		this.optimal = optimal;
+	}
+
+	public OptimalPlay getOptimalPlay() {
+		return optimal;
+	}
+
+	public void setTargetPrecision(double targetPrecision) {
+		// Stop playing once the confidence interval of the edge is
+		// narrower than this on each side (see BlackjackStats.isPrecise)
+		this.targetPrecision = targetPrecision;
+	}
+
+	public void requestStop() {
+		// Ask playRounds, which may be running on another thread, to stop
+		// at the end of the current round
+		stopRequested = true;
+	}
+
+	public BlackjackRules getRules() {
+		return rules;
+	}
+
+	public BlackjackStats getStats() {
+		return stats;
+	}
+
+	public int getShuffleNum() {
+		return shuffleNum;
+	}
+
+	public BlackjackStats run(int rounds) throws IOException {
+		// Play a number of rounds, numbered from 1, and return the stats
+		playRounds(0, rounds, false);
+		return stats;
+	}
+
+	public void playRounds(int firstRound, int rounds, boolean showProgress)
+			throws IOException {
+		// Play a number of rounds on this engine's deck.  Rounds are
+		// numbered from firstRound, so that engines sharing a simulation
+		// can each take a separate range of round numbers.  The record of
+		// each round is given to the recorder.  This can be called again
+		// to play more rounds; the deck carries on where it stopped.
+		// Fewer rounds are played if the target precision is reached, or
+		// if requestStop is called.
+
+		firstShuffle();
+
+		// This loop is repeated for every round
+		for (roundNum = firstRound; roundNum < firstRound + rounds; 
+				roundNum++) {
+			// At certain intervals, give us some statistics
+			if (showProgress && (roundNum % Settings.UPDATE_INTERVAL) == 0) { 
+				BlackjackSimulator.updateProgress(roundNum, stats); 
+			}
+			// This function plays the round, return the money won/lost in
+			// that hand as an int
+			if (metrics != null) {
+				metrics.startRound();
+			}
+			int result = playHand();
+			// Now hand the record of that round to the recorder.  If
+			// nothing is recorded, or the filter turns the round down,
+			// the record is not filled in at all
+			if (recorder != RoundRecorder.NONE && filter.accept(
+					roundRecord.getCardsLeft(), roundRecord.getDeckCount(),
+					playerHands, dealerHand)) {
+				roundRecord.processRoundResults(playerHands, dealerHand);
+				recorder.record(roundRecord);
+			}
+			if (metrics != null) {
+				metrics.phase(EngineMetrics.RECORD);
+				metrics.endRounds(1, playerHands.size());
+			}
+			// If we are playing manually, or it we requested details of
+			// every hand, tell us the winnings for that round
+			if (isDisplayOn()) {
+				displayIf("This round: " + result +	", total: " + 
+						stats.getTotalWinnings() + "\n\n");
+			}
+			// The round is fully counted, so the stats can be published.
+			// That is also when the precision is checked.
+			if (stats.checkpoint() && targetPrecision > 0 && 
+					stats.isPrecise(targetPrecision, Settings.CONFIDENCE_Z)) {
+				break;
+			}
+			if (stopRequested) {
+				break;
+			}
+		} // Repeat this loop to play more rounds
+		publish();
+	}
+
+	public int playRound() {
+		// Play the next round without recording it, and return its
+		// winnings, for callers that follow the result of every round
+		// (see BankrollSimulation).  Call publish after the last round.
+		firstShuffle();
+		if (metrics != null) {
+			metrics.startRound();
+		}
+		int result = playHand();
+		if (metrics != null) {
+			metrics.phase(EngineMetrics.RECORD);
+			metrics.endRounds(1, playerHands.size());
+		}
+		stats.checkpoint();
+		roundNum++;
+		return result;
+	}
+
+	public void publish() {
+		// Publish the stats and metrics of the rounds played so far
+		stats.publish();
+		if (metrics != null) {
+			metrics.publish();
+		}
+	}
+
+	private void firstShuffle() {
+		// Give a new deck a first shuffle
+		if (shuffleNum == 0) {
+			deck.shuffle(); shuffleNum++;	// Shuffle it, increase counter by 1
+			if (metrics != null) {
+				metrics.shuffled();
+			}
+		}
+	}
+
+	public void close() throws IOException {
+		// Close the recorder once this engine has no more rounds to play
+		recorder.close();
+	}
+
+	public int playHand() {
+		// This is where the game is played!
+		
+		// Note the function showStateOfRound(playerHands, dealerHand, boolean)
+		// If the boolean is true, the dealer hole card is hidden
+		// If the boolean is false, the dealer hole card is shown
+		// If VERBOSE is false, showStateOfRound will display nothing
+		
+		// Check if there is enough cards to play this round. If not, shuffle
+		if ( deck.cardsLeft() < cardsLeftToShuffle ) {
+			deck.shuffle();	shuffleNum++;
+			if (metrics != null) {
+				metrics.shuffled();
+			}
+		}
+		if (metrics != null) {
+			metrics.phase(EngineMetrics.SHUFFLE);
+		}
+		
+		// Start a new record for this round, and enter some
+		// preliminary information
+		roundRecord.startRound(roundNum, shuffleNum,
+				deck.cardsLeft(), deck.deckCount());
+	
+		// Initialize the winnings and the amount bet for this round
+		int roundWinnings = 0, roundBet = 0;
+		
+		// The first cards are not dealt in the same sequence as they
+		// would at the casino; (players-dealer down-players-dealer up)
+		// Since cards are random, this makes no difference to outcomes
+		
+		// Initialize the dealer's hand, give them two cards
+		// The second card in the hand will be hidden from players
+		// until the dealer's turn to play (unless blackjack)
+		dealerHand.reset(0);
+		dealerHand.addCard(deck.dealCode());
+		dealerHand.addCard(deck.dealCode());
+		
+		// playerHands is an ArrayList with all hands for the player
+		// Having an ArrayList allows for handling of splits
+		// The first hand is index 0
+		playerHands.clear();
+		// For each hand, set the bet and deal two cards
+		for (int i = 0;i < rules.getHandsPerRound();i++) {
+			addPlayerHand();
+			rootCell[i] = -1;
+			rootWinnings[i] = 0;
+			roundBet += betUnit;
+			playerHands.get(i).addCard(deck.dealCode());
+			playerHands.get(i).addCard(deck.dealCode());
+		}
+		
+		// If the dealer's up card is an ace, ask for insurance.
+		// Blackjack rules allow an insurance bet of up to half the original
+		// bet, but this assumes that insurance will be half of the bet.
+		if (dealerHand.getCardValue(0) == 1) {
+			// Assumed that the decision will be the same for all hands
+			char nextMove = 'N';  // Initialize the nextMove variable
+			// If Rules.SIMULATION is true, the computer determines
+			// whether to take insurance.  Otherwise, the player does so.
+			if (Settings.SIMULATION) {
+				nextMove = BlackjackStrategy.insurance(deck);
+			} else {
+				showStateOfRound(playerHands, dealerHand, true);
+				nextMove = askPlayerInsurance();	
+			}
+			// If the choice is Yes, mark the insurance flag for each hand
+			if (nextMove == 'Y') {
+				for (int i = 0;i < rules.getHandsPerRound();i++) {
+					playerHands.get(i).setInsuranceFlag(true);
+					roundBet += betUnit / 2;
+				}
+			}
+		}
+
+		// The deal and insurance count as the player's phase, also for
+		// rounds that end here on a blackjack
+		if (metrics != null) {
+			metrics.phase(EngineMetrics.PLAYER);
+		}
+
+		// Check if the dealer has 21 - if so, we will not play out
+		// this round.  All player hands lose, unless a hand also
+		// had 21 in two cards, then it is a push (no money change).
+		if (dealerHand.getBlackjackScore() == 21) {
+			for (int h = 0; h < playerHands.size(); h++) {
+				BlackjackHand hand = playerHands.get(h);
+				if (hand.getBlackjackScore() < 21) {
+					// Dealer wins this hand
+					stats.lossBj();
+					if (hand.isInsuranceFlag()) {
+						// Insurance was successful, no money change
+						stats.winInsurance();
+					} else {
+						// No insurance, simply lose hand
+						roundWinnings -= hand.getBet();
+					}
+				} else {
+					// Both player and dealer got blackjacks
+					stats.pushBj();
+					if (hand.isInsuranceFlag()) {
+						// Insurance was successful, player loses
+						// winnings for their blackjack but wins
+						// insurance, so roundWinnings = betUnit
+						roundWinnings += hand.getBet();
+						stats.winInsurance();
+					} else {
+						// No insurance, simply push hand
+					}
+				}
+			}
+			// Display the state of the round, process the results, and exit
+			showStateOfRound(playerHands, dealerHand, false);
+			endRound(roundWinnings, roundBet);
+			return roundWinnings; // We are finished; exit this function now
+		}
+		
+		// If insurance was played and we got here, insurance was lost
+		// Lose half of betUnit per hand
+		// While we are cycling through each hand, also check if all
+		// player hands are 21 - if so, we don't need to play out this round
+		boolean allBlackjacks = true;
+		for (int h = 0; h < playerHands.size(); h++) {
+			BlackjackHand hand = playerHands.get(h);
+			if (hand.getBlackjackScore() < 21) {
+				// If at least one hand is not 21, we must play out the round
+				allBlackjacks = false;
+			}
+			if (hand.isInsuranceFlag()) {
+				// At this point, insurance is lost, and a separate
+				// bet of half of the betUnit is lost.
+				stats.lossInsurance();
+				roundWinnings -= hand.getBet() / 2;
+			}
+		}
+		
+		// If all hands are blackjacks, we will not play this round
+		if (allBlackjacks) {
+			for (int h = 0; h < playerHands.size(); h++) {
+				BlackjackHand hand = playerHands.get(h);
+				roundWinnings += hand.getBet() * 3 / 2;
+				stats.winBj();
+			}
+			// Display the state of the round, process the results, and exit
+			showStateOfRound(playerHands, dealerHand, false);
+			endRound(roundWinnings, roundBet);
+			return roundWinnings; // We are finished; exit the function now
+		}
+		
+		
+		// We play each player hand, one at a time
+		// If a hand is a blackjack, they will get 1.5 * bet, 
+		// but that will be handled after all hands have been played out
+		
+		int handNum = 0; // Counter of the hand being played
+		boolean allBust = true;	// Keep track whether all hands have busted
+		
+		while ( handNum < playerHands.size() ) {
+			// A while loop is used instead of a for loop since the size of the 
+			// playerHands ArrayList can grow within the loop due to splits
+			
+			// Show the player the state of the hands; while in this loop,
+			// the dealer's hole card is not shown (hence the true flag)
+			showStateOfRound(playerHands, dealerHand, true);
+			
+			// The outer loop PlayerTurn is exited when no more cards 
+			// can be played (after stand, double, split aces or bust)
+			// Double can only be played when a hand has 2 cards
+			// sPlit can only be played with a hand has 2 cards and a pair 
+			PlayerTurn:
+				while (playerHands.get(handNum).getBlackjackScore() < 21) {
+					// If we have a pair of aces from a split hand, we
+					// must stand, so this hand ends now
+					if (playerHands.get(handNum).getCardValue(0) == 1 &&
+							playerHands.get(handNum).isSplitFlag()) {
+						break PlayerTurn;
+					}
+					
+					// If more than one hand, tell us which is
+					// currently being played
+					if (playerHands.size() > 1 && isDisplayOn()) {
+						displayIf("Hand " + (handNum+1) + " ");
+					}
+					
+					// If Rules.SIMULATION is true, the computer determines
+					// the next move.  Otherwise, the player does so.
+					char nextMove = 'X';	// Initialize nextMove parameter
+					if (Settings.SIMULATION) {
+						int situation = strategy.situation(
+								playerHands.get(handNum), Card.codeBlackjackValue(
+								dealerHand.getCardCode(0)));
+						nextMove = strategy.move(situation);
+						// Optimal play overrides the chart
+						if (optimal != null) {
+							nextMove = optimal.playerMove(
+									playerHands.get(handNum),
+									Card.codeBlackjackValue(
+									dealerHand.getCardCode(0)),
+									unseenCards(), nextMove);
+						}
+						// The first decision on a dealt hand gives its cell
+						if (cells != null && rootCell[handRoot[handNum]] < 0) {
+							rootCell[handRoot[handNum]] = 
+									DecisionCells.cell(situation, nextMove);
+						}
+					} else {
+						nextMove = askPlayerMove(playerHands.get(handNum));	
+					}
+					
+					// Let's execute the next move!
+					switch (nextMove) {
+					case 'H': // Hit: deal a card
+						playerHands.get(handNum).addCard(deck.dealCode());
+						displayIf("Player Hit\n");
+						break;
+					case 'S': // Stand: get out of this loop
+						displayIf("Player Stand\n");
+						break PlayerTurn;
+					case 'D': // Double down: double bet, deal one card, get out
+						playerHands.get(handNum).setDoubleFlag(true);
+						playerHands.get(handNum).addCard(deck.dealCode());
+						roundBet += betUnit;
+						displayIf("Player Double\n");
+						break PlayerTurn;
+					case 'P': // Split: create new hand and move second card of
+							  // the original hand to the new hand
+						addPlayerHand();
+						handRoot[playerHands.size()-1] = handRoot[handNum];
+						int splitCard = playerHands.get(handNum).getCardCode(1);
+						playerHands.get(handNum).removeCard(1);
+						playerHands.get(playerHands.size()-1).addCard(splitCard);
+						roundBet += betUnit;
+						// Set splitFlag for the original and new hands to true
+						playerHands.get(handNum).setSplitFlag(true);
+						playerHands.get(playerHands.size()-1).setSplitFlag(true);
+						// Deal a second card to each hand, then play the hand again
+						playerHands.get(handNum).addCard(deck.dealCode());
+						playerHands.get(playerHands.size()-1).addCard(deck.dealCode());
+						// If splitting aces, only one card is allowed on
+						// each ace, then get out
+						if (Card.codeValue(splitCard) == 1) {
+							displayIf("Player Split (aces - must stand)\n");
+							break PlayerTurn;
+						} else {
+							displayIf("Player Split\n");
+							break;	// Didn't split aces, so keep going
+						}
+					default: // Should never get here
+						System.out.println("Not sure what happened, let's stop");
+						break PlayerTurn;
+					}
+					showStateOfRound(playerHands, dealerHand, true);
+				}
+
+			// Check if the hand busted; if not, the dealer will have to play
+			// out their hand, so set allBust to false
+			if (playerHands.get(handNum).getBlackjackScore() <= 21) {
+				allBust = false;
+			} else {
+				displayIf("Player Busted\n");
+			}
+
+			handNum++; // Increase the counter by 1
+		} 
+		
+		// Unless all hands busted, we will now play out the dealer's hand
+		if (metrics != null) {
+			metrics.phase(EngineMetrics.PLAYER);
+		}
+		showStateOfRound(playerHands, dealerHand, false);
+		DealerTurn:
+			while (dealerHand.getBlackjackScore() < 21 && allBust == false) {
+				// The nextMove is determined from BlackjackStrategy
+				char nextMove = BlackjackStrategy.dealerMove(dealerHand);
+				switch (nextMove) {
+				case 'H': // Hit: deal a card
+					dealerHand.addCard(deck.dealCode());
+					displayIf("Dealer Hit\n");
+					break;
+				case 'S': // Stand: get out of this loop
+					displayIf("Dealer Stand\n");
+					break DealerTurn;
+				default: // Should never get here
+					System.out.println("Not sure what happened, let's stop");
+					break DealerTurn;
+				}
+				showStateOfRound(playerHands, dealerHand, false);
+			}
+		
+		// The final outcome of each hand is determined
+		
+		// If the dealer bust, every player hand wins unless it also busted.
+		if (dealerHand.getBlackjackScore() > 21) {
+			// Dealer busted!
+			displayIf("Dealer Busted\n");
+			for (int h = 0; h < playerHands.size(); h++) {
+				BlackjackHand hand = playerHands.get(h);
+				int before = roundWinnings;
+				if (hand.getBlackjackScore() == 21) { 
+					// Dealer busted, player's hand was 21
+					if (hand.getCardCount() == 2 && hand.isSplitFlag() == false) {
+						// If it was in two cards and not split, it's a blackjack
+						roundWinnings += hand.getBet() * 1.5;
+						stats.winBj();
+					} else if (hand.isDoubleFlag() == true) {
+						// If doubleFlag is true, it was a double down
+						roundWinnings += hand.getBet() * 2;
+						stats.winDouble(hand.isSplitFlag());
+					} else {
+						// Otherwise, just a plain winning hand
+						roundWinnings += hand.getBet();
+						stats.win(hand.isSplitFlag());
+					}
+				} else if (hand.getBlackjackScore() < 21) {	
+					// Dealer busted, player's hand was less than 21
+					if (hand.isDoubleFlag() == true) {
+						// If doubleFlag is true, it was a double down
+						roundWinnings += hand.getBet() * 2;
+						stats.winDouble(hand.isSplitFlag());
+					} else {
+						// Otherwise, just a plain winning hand
+						roundWinnings += hand.getBet();
+						stats.win(hand.isSplitFlag());
+					}
+				} else { 
+					// Dealer and player both busted - player loses this hand
+					if (hand.isDoubleFlag() == true) {
+						// If doubleFlag is true, it was a double down
+						roundWinnings -= hand.getBet() * 2;
+						stats.lossDouble(hand.isSplitFlag());
+					} else {
+						// Otherwise, just a plain losing hand
+						roundWinnings -= hand.getBet();
+						stats.loss(hand.isSplitFlag());
+					}
+				}
+				rootWinnings[handRoot[h]] += roundWinnings - before;
+			}
+			endRound(roundWinnings, roundBet);
+			return roundWinnings;  // We are done; exit the function now.
+		}
+		
+		// The dealer has 21 or less, so we now compare hands
+		for (int h = 0; h < playerHands.size(); h++) {
+			BlackjackHand hand = playerHands.get(h);
+			int before = roundWinnings;
+			if (hand.getBlackjackScore() > 21) {
+				// The player's hand busted, automatic loss
+				if (hand.isDoubleFlag() == true) {
+					// If doubleFlag is true, it was a double down
+					roundWinnings -= hand.getBet() * 2;
+					stats.lossDouble(hand.isSplitFlag());
+				} else {
+					// Otherwise, just a plain losing hand
+					roundWinnings -= hand.getBet();
+					stats.loss(hand.isSplitFlag());
+				}
+			} else if (hand.getBlackjackScore() > dealerHand.getBlackjackScore()) {
+				// Player's hand wins
+				if (hand.isDoubleFlag() == true) { 
+					// If doubleFlag is true, it was a double down
+					roundWinnings += hand.getBet() * 2;
+					stats.winDouble(hand.isSplitFlag());
+				} else {
+					// Otherwise, just a plain winning hand
+					roundWinnings += hand.getBet();
+					stats.win(hand.isSplitFlag());
+				}
+			} else if (hand.getBlackjackScore() < dealerHand.getBlackjackScore()) {
+				// Dealer's hand wins
+				if (hand.isDoubleFlag() == true) { 
+					// If doubleFlag is true, it was a double down
+					roundWinnings -= hand.getBet() * 2;
+					stats.lossDouble(hand.isSplitFlag());
+				} else {
+					// Otherwise, just a plain losing hand
+					roundWinnings -= hand.getBet();
+					stats.loss(hand.isSplitFlag());
+				}
+			} else {
+				// The hands tied, so it's a push and nothing won or lost
+				if (hand.isDoubleFlag() == true) { 
+					// If doubleFlag is true, it was a double down
+					stats.pushDouble(hand.isSplitFlag());
+				} else {
+					// Otherwise, just a plain push
+					stats.push(hand.isSplitFlag());
+				}
+			}	
+			rootWinnings[handRoot[h]] += roundWinnings - before;
+		}
+		endRound(roundWinnings, roundBet);
+		return roundWinnings; // We are finished, exit the function now
+	}
+	
+	private void endRound(int roundWinnings, int roundBet) {
+		// Add the round to the stats, to the histogram under the count
+		// and cards left the round started with, and each dealt hand to
+		// the cell of its first decision.  The dealer's phase ends here,
+		// including the settling of the hands.
+		if (metrics != null) {
+			metrics.phase(EngineMetrics.DEALER);
+		}
+		stats.updateWinnings(roundWinnings, roundBet);
+		if (histogram != null) {
+			histogram.add(roundRecord.getDeckCount(), 
+					roundRecord.getCardsLeft(), roundWinnings, roundBet);
+		}
+		if (cells != null) {
+			for (int r = 0; r < rootCell.length; r++) {
+				if (rootCell[r] >= 0) {
+					cells.add(rootCell[r], rootWinnings[r]);
+				}
+			}
+		}
+	}
+	
+	private int[] unseenCards() {
+		// The cards the player has not seen, of each blackjack value (as
+		// in DealerOdds): those left in the deck, and the dealer's hole
+		// card.  The same array is filled in for every decision.
+		DealerOdds.composition(deck, unseen);
+		int holeCard = Card.codeBlackjackValue(dealerHand.getCardCode(1));
+		unseen[(holeCard == 11) ? 1 : holeCard]++;
+		return unseen;
+	}
+	
+	private void addPlayerHand() {
+		// Add a player hand to this round, with the bet unit and no cards.
+		// A hand from the pool is reused; a new one is only made the first
+		// time a round needs this many hands.
+		if (playerHands.size() == handPool.size()) {
+			handPool.add(new BlackjackHand(betUnit));
+			if (handPool.size() > handRoot.length) {
+				handRoot = Arrays.copyOf(handRoot, 2 * handRoot.length);
+			}
+		}
+		BlackjackHand hand = handPool.get(playerHands.size());
+		hand.reset(betUnit);
+		handRoot[playerHands.size()] = playerHands.size();
+		playerHands.add(hand);
+	}
+	
+	static boolean isDisplayOn() {
+		// True if the state of each round is shown on screen.  Strings 
+		// that are built only to be displayed should be checked against
+		// this first, so that no time is spent building them otherwise
+		return Settings.VERBOSE || !Settings.SIMULATION;
+	}
+	
+	static void displayIf(String theString) {
+		// This function handles several strings that are only shown
+		// if the player requests it (VERBOSE = true), or are 
+		// playing manually (SIMULATION = false)
+		if (isDisplayOn()) {
+			System.out.print(theString);
+		}
+	}
+
+	public static char askPlayerMove(Hand hand) {
+		// This function is used when playing manually
+		
+		char playerMove = 'X';	// Initialize the playerMove variable
+
+		// In all cases, the loop continues until the user selects a 
+		// valid option for that situation
+		if (hand.getCardCount() == 2) {
+			// If the hand has two cards, offer the option to Double
+			if (hand.isPair()) {
+				// If the hand has a pair, also offer option to sPlit
+				while (playerMove != 'H' && playerMove != 'S' 
+						&& playerMove != 'D' && playerMove != 'P') {
+					System.out.print("Hit, Stand, Double, sPlit? ");
+					playerMove = readChoice();
+				}
+			} else {
+				while (playerMove != 'H' && playerMove != 'S' && 
+						playerMove != 'D') {
+					System.out.print("Hit, Stand, Double? ");
+					playerMove = readChoice();
+				}
+			}
+			return playerMove;
+		} else {
+			// The hand has more than two cards, only Hit or Stand
+			while (playerMove != 'H' && playerMove != 'S') {
+				System.out.print("Hit, Stand? ");
+				playerMove = readChoice();
+			}
+		}
+		return playerMove;
+
+	}
+	
+	private static char askPlayerInsurance() {
+		// This function is used when playing manually
+
+		char playerMove = 'X';	// Initialize the playerMove variable
+
+		// If the hand has a pair, also offer option to sPlit
+		while (playerMove != 'N' && playerMove != 'Y') {
+			System.out.print("Insurance, Yes or No? ");
+			playerMove = readChoice();
+		}
+		return playerMove;
+	}
+
+	private static char readChoice() {
+		// This function returns a single uppercase character from the keyboard 
+
+		// Initialize the char variable
+		char choice = 'X';
+		try {
+			choice = (char) System.in.read();
+			while (System.in.read() != '\n');
+		} catch (IOException e) { e.printStackTrace(); }
+
+		// Make sure the returned character is uppercase
+		return Character.toUpperCase(choice);
+	}
+
+	public static void showStateOfRound(ArrayList<BlackjackHand> playerHands, 
+			BlackjackHand dealerHand, boolean playerTurn) {
+		// Displays the player hands and the dealer hand
+		// This information is only displayed if the player requests it
+		// (VERBOSE = true), or are playing manually (SIMULATION = false)
+		if (isDisplayOn()) { 
+			
+			if (playerHands.size() > 1) {
+				// If more than one hand, give the index number of each hand
+				// Calling "hand" in the println command calls hand.toString()
+				for (BlackjackHand hand : playerHands) {
+					System.out.println("Player Hand " + 
+						(1+playerHands.indexOf(hand)) +	": " + hand + " (" +
+						hand.getBlackjackScore() + ")");	
+				}
+			} else {
+				// Only one hand, so no need for index number
+				System.out.println("Player Hand: " + 
+						playerHands.get(0).toString() +	" (" + 
+						playerHands.get(0).getBlackjackScore() + ")");
+			}
+
+			// If playerTurn == true, do not show dealer's hole card or total
+			if (playerTurn) {
+				// Only show the dealer's up card
+				System.out.println("Dealer Hand:  " + dealerHand.getCard(0));
+			} else {
+				// Show the dealer's entire hand
+				System.out.println("Dealer Hand: " + dealerHand + " (" +
+						dealerHand.getBlackjackScore() + ")");
+			}
+		}
+
+	}
+}
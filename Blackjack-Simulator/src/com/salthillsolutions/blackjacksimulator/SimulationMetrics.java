@@ -0,0 +1,225 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/* Throughput and timings of a run, reported every METRICS_INTERVAL
+ * seconds by a timer thread, so the simulation threads do no more than
+ * count (see EngineMetrics).  Each report adds up the counters of every
+ * engine, works out the rates since the report before, prints them on one
+ * line and keeps them for the JMX attributes of SimulationMetricsMBean.
+ * If METRICS_JFR is set, each report is also written as a MetricsEvent.
+ */
+
+public class SimulationMetrics implements SimulationMetricsMBean {
+
+	// Name under which the metrics are published over JMX
+	public static final String OBJECT_NAME =
+			"com.salthillsolutions.blackjacksimulator:type=SimulationMetrics";
+
+	private final List<EngineMetrics> engines =
+			new CopyOnWriteArrayList<EngineMetrics>();
+	private final List<AsyncRoundRecorder> recorders =
+			new CopyOnWriteArrayList<AsyncRoundRecorder>();
+	private final Timer timer = new Timer("Simulation metrics", true);
+
+	// Totals at the last report, and when it was made; only used by the
+	// timer thread
+	private long lastNanos = System.nanoTime();
+	private long lastRounds, lastHands, lastShuffles, lastSampled;
+	private final long[] lastPhaseNanos = new long[EngineMetrics.PHASES];
+	private long lastWriteNanos;
+
+	// The last report, for JMX
+	private volatile long rounds, hands, shuffles, queueDepth;
+	private volatile double roundsPerSecond, handsPerSecond,
+			shufflesPerSecond, writeNanos;
+	private volatile double[] phaseNanos = new double[EngineMetrics.PHASES];
+
+	public static SimulationMetrics fromSettings() {
+		// Metrics reported every METRICS_INTERVAL seconds, or null if the
+		// interval is 0
+		if (Settings.METRICS_INTERVAL <= 0) {
+			return null;
+		}
+		SimulationMetrics metrics = new SimulationMetrics();
+		metrics.start(Settings.METRICS_INTERVAL * 1000L);
+		return metrics;
+	}
+
+	public void start(long intervalMillis) {
+		// Publish the metrics over JMX, and start the timer thread
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (server.isRegistered(name)) {
+				server.unregisterMBean(name);
+			}
+			server.registerMBean(this, name);
+		} catch (JMException e) { e.printStackTrace(); }
+		timer.scheduleAtFixedRate(new TimerTask() {
+			public void run() {
+				report();
+			}
+		}, intervalMillis, intervalMillis);
+	}
+
+	public EngineMetrics addEngine() {
+		// Counters for one more engine
+		EngineMetrics engine = new EngineMetrics();
+		engines.add(engine);
+		return engine;
+	}
+
+	public void addRecorder(RoundRecorder recorder) {
+		// Follow the queue of a recorder, if it writes on its own thread
+		if (recorder instanceof AsyncRoundRecorder) {
+			recorders.add((AsyncRoundRecorder) recorder);
+		}
+	}
+
+	public void stop() {
+		// Stop the timer thread and remove the metrics from JMX
+		timer.cancel();
+		try {
+			ManagementFactory.getPlatformMBeanServer().unregisterMBean(
+					new ObjectName(OBJECT_NAME));
+		} catch (JMException e) { e.printStackTrace(); }
+	}
+
+	synchronized void report() {
+		// Add up every engine and recorder, and work out the rates since
+		// the last report
+		long now = System.nanoTime();
+		long newRounds = 0, newHands = 0, newShuffles = 0, sampled = 0;
+		long[] newPhaseNanos = new long[EngineMetrics.PHASES];
+		for (EngineMetrics engine : engines) {
+			newRounds += engine.get(EngineMetrics.ROUNDS);
+			newHands += engine.get(EngineMetrics.HANDS);
+			newShuffles += engine.get(EngineMetrics.SHUFFLES);
+			sampled += engine.get(EngineMetrics.SAMPLED);
+			for (int p = 0; p < EngineMetrics.PHASES; p++) {
+				newPhaseNanos[p] += engine.getPhaseNanos(p);
+			}
+		}
+		long newWriteNanos = 0, depth = 0;
+		for (AsyncRoundRecorder recorder : recorders) {
+			newWriteNanos += recorder.getWriteNanos();
+			depth += recorder.getQueueDepth();
+		}
+
+		double seconds = (now - lastNanos) / 1e9;
+		roundsPerSecond = (newRounds - lastRounds) / seconds;
+		handsPerSecond = (newHands - lastHands) / seconds;
+		shufflesPerSecond = (newShuffles - lastShuffles) / seconds;
+		double[] perRound = new double[EngineMetrics.PHASES];
+		for (int p = 0; p < EngineMetrics.PHASES; p++) {
+			perRound[p] = (sampled > lastSampled) ? (double)
+					(newPhaseNanos[p] - lastPhaseNanos[p]) /
+					(sampled - lastSampled) : 0;
+		}
+		phaseNanos = perRound;
+		writeNanos = (newRounds > lastRounds) ? (double) (newWriteNanos -
+				lastWriteNanos) / (newRounds - lastRounds) : 0;
+		rounds = newRounds;
+		hands = newHands;
+		shuffles = newShuffles;
+		queueDepth = depth;
+
+		lastNanos = now;
+		lastRounds = newRounds;
+		lastHands = newHands;
+		lastShuffles = newShuffles;
+		lastSampled = sampled;
+		System.arraycopy(newPhaseNanos, 0, lastPhaseNanos, 0,
+				EngineMetrics.PHASES);
+		lastWriteNanos = newWriteNanos;
+
+		System.out.println(this);
+		if (Settings.METRICS_JFR) {
+			commitEvent();
+		}
+	}
+
+	private void commitEvent() {
+		// Write the last report as a flight recorder event
+		MetricsEvent event = new MetricsEvent();
+		event.roundsPerSecond = roundsPerSecond;
+		event.handsPerSecond = handsPerSecond;
+		event.shufflesPerSecond = shufflesPerSecond;
+		event.shuffleNanos = phaseNanos[EngineMetrics.SHUFFLE];
+		event.playerNanos = phaseNanos[EngineMetrics.PLAYER];
+		event.dealerNanos = phaseNanos[EngineMetrics.DEALER];
+		event.recordNanos = phaseNanos[EngineMetrics.RECORD];
+		event.writeNanos = writeNanos;
+		event.queueDepth = queueDepth;
+		event.commit();
+	}
+
+	public long getRounds() {
+		return rounds;
+	}
+
+	public long getHands() {
+		return hands;
+	}
+
+	public long getShuffles() {
+		return shuffles;
+	}
+
+	public double getRoundsPerSecond() {
+		return roundsPerSecond;
+	}
+
+	public double getHandsPerSecond() {
+		return handsPerSecond;
+	}
+
+	public double getShufflesPerSecond() {
+		return shufflesPerSecond;
+	}
+
+	public double getShuffleNanosPerRound() {
+		return phaseNanos[EngineMetrics.SHUFFLE];
+	}
+
+	public double getPlayerNanosPerRound() {
+		return phaseNanos[EngineMetrics.PLAYER];
+	}
+
+	public double getDealerNanosPerRound() {
+		return phaseNanos[EngineMetrics.DEALER];
+	}
+
+	public double getRecordNanosPerRound() {
+		return phaseNanos[EngineMetrics.RECORD];
+	}
+
+	public double getWriteNanosPerRound() {
+		return writeNanos;
+	}
+
+	public long getQueueDepth() {
+		return queueDepth;
+	}
+
+	public String toString() {
+		// The last report on one line
+		double[] perRound = phaseNanos;
+		return String.format("Metrics: %,.0f rounds/s, %,.0f hands/s, " +
+				"%,.0f shuffles/s; ns per round: shuffle %.0f, player %.0f, " +
+				"dealer %.0f, record %.0f, write %.0f; queue %d",
+				roundsPerSecond, handsPerSecond, shufflesPerSecond,
+				perRound[EngineMetrics.SHUFFLE], perRound[EngineMetrics.PLAYER],
+				perRound[EngineMetrics.DEALER], perRound[EngineMetrics.RECORD],
+				writeNanos, queueDepth);
+	}
+
+}
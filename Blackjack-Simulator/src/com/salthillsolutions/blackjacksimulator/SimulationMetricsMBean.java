@@ -0,0 +1,30 @@
+package com.salthillsolutions.blackjacksimulator;
+
+/* The attributes of SimulationMetrics that can be read over JMX, for
+ * example with JConsole.  The rates and times are those of the last
+ * report.
+ */
+
+public interface SimulationMetricsMBean {
+
+	// Totals of all engines since the start
+	public long getRounds();
+	public long getHands();
+	public long getShuffles();
+
+	// Rates over the last report interval
+	public double getRoundsPerSecond();
+	public double getHandsPerSecond();
+	public double getShufflesPerSecond();
+
+	// Average time per round of each phase, from the sampled rounds; the
+	// write time is that of the output threads
+	public double getShuffleNanosPerRound();
+	public double getPlayerNanosPerRound();
+	public double getDealerNanosPerRound();
+	public double getRecordNanosPerRound();
+	public double getWriteNanosPerRound();
+
+	// Rounds waiting in the output queues
+	public long getQueueDepth();
+}
@@ -0,0 +1,267 @@
+package com.salthillsolutions.blackjacksimulator;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+
+/* Player's strategy read from a strategy chart, with hard, soft and pair
+ * tables against each dealer up card.  See basic-strategy.txt for the
+ * layout of a chart file.
+ * When a chart is loaded it is compiled into a flat array with one move
+ * for every (hand class, total, up card, can double, can split), so each
+ * decision is a single array read.  For pairs, the "total" is the value
+ * of one card of the pair (2 to 11, ace = 11).  A chart never changes
+ * once loaded, so one chart can be shared by all engines.
+ */
+
+public class StrategyChart {
+
+	// Hand classes, as used in the index of the moves array
+	public static final int HARD = 0, SOFT = 1, PAIR = 2;
+
+	// Name of the chart that is built into the program
+	public static final String BUILT_IN_CHART = "basic-strategy.txt";
+
+	// Size of each dimension of the moves array.  Totals go up to 21 and
+	// up cards up to 11 (ace), so index 0 is never used in either
+	private static final int TOTALS = 22, UP_CARDS = 12;
+
+	// Number of situations, each with its own place in the moves array
+	public static final int SITUATIONS = 3 * TOTALS * UP_CARDS * 2 * 2;
+
+	// The moves array: H, S, D or P for every situation
+	private final byte[] moves = new byte[SITUATIONS];
+
+	// The chart shared by engines that are not given their own
+	private static StrategyChart defaultChart = null;
+
+
+	private StrategyChart(String[][][] chart) {
+		// Compile the chart into the moves array.  chart[handClass][total]
+		// holds the move for each up card 2-11, or null if the row is
+		// not in the chart.
+		for (int handClass = HARD; handClass <= PAIR; handClass++) {
+			for (int total = 0; total < TOTALS; total++) {
+				for (int upCard = 2; upCard < UP_CARDS; upCard++) {
+					for (int canDouble = 0; canDouble <= 1; canDouble++) {
+						for (int canSplit = 0; canSplit <= 1; canSplit++) {
+							moves[index(handClass, total, upCard, canDouble,
+									canSplit)] = (byte) compileMove(chart,
+									handClass, total, upCard, canDouble == 1,
+									canSplit == 1);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private static char compileMove(String[][][] chart, int handClass,
+			int total, int upCard, boolean canDouble, boolean canSplit) {
+		// Work out the move for one situation from the rows of the chart
+		if (handClass == PAIR && (total < 2 || total > 11)) {
+			// Not a pair value
+			return 'S';
+		} else if (handClass == PAIR && !canSplit) {
+			// A pair that cannot be split is played as a normal hand;
+			// only a pair of aces has a soft total (12)
+			if (total == 11) {
+				handClass = SOFT; total = 12;
+			} else {
+				handClass = HARD; total = 2 * total;
+			}
+		}
+		String[] row = chart[handClass][total];
+		if (row == null || row[upCard] == null) {
+			// Not in the chart
+			return 'S';
+		}
+		String move = row[upCard];
+		if (move.equals("D")) {
+			return canDouble ? 'D' : 'H';
+		} else if (move.equals("Ds")) {
+			return canDouble ? 'D' : 'S';
+		}
+		return move.charAt(0);
+	}
+
+	private static int index(int handClass, int total, int upCard,
+			int canDouble, int canSplit) {
+		// Position of a situation in the moves array
+		return (((handClass * TOTALS + total) * UP_CARDS + upCard) * 2 +
+				canDouble) * 2 + canSplit;
+	}
+
+	public static String describe(int situation) {
+		// A short name for a situation, such as "soft 18 v 9", "pair 8 v A"
+		// or "hard 16 v T (3+ cards)" for a hand that cannot double
+		int canDouble = (situation >> 1) & 1;
+		int upCard = (situation >> 2) % UP_CARDS;
+		int total = (situation >> 2) / UP_CARDS % TOTALS;
+		int handClass = (situation >> 2) / UP_CARDS / TOTALS;
+		String name = (handClass == HARD) ? "hard " : (handClass == SOFT) ?
+				"soft " : "pair ";
+		name = name + ((handClass == PAIR && total == 11) ? "A" : 
+				String.valueOf(total)) + " v " + ((upCard == 11) ? "A" : 
+				(upCard == 10) ? "T" : String.valueOf(upCard));
+		if (canDouble == 0) {
+			name = name + " (3+ cards)";
+		} else if (handClass == PAIR && (situation & 1) == 0) {
+			name = name + " (no resplit)";
+		}
+		return name;
+	}
+
+	public char playerMove(BlackjackHand playerHand, int upCard) {
+		// Player's next move, for the dealer's up card given as its
+		// blackjack value (2 to 11)
+		return (char) moves[situation(playerHand, upCard)];
+	}
+
+	public char move(int situation) {
+		// Player's next move for a situation found by situation()
+		return (char) moves[situation];
+	}
+
+	public int situation(BlackjackHand playerHand, int upCard) {
+		// The place of the player's situation in the moves array, from 0
+		// to SITUATIONS - 1.  As in BlackjackStrategy.playerMove, the pair
+		// and soft tables are for two-card hands only.
+		int handClass = HARD;
+		int total = playerHand.getBlackjackScore();
+		int canSplit = 0;
+		int canDouble = 0;
+		if (playerHand.getCardCount() == 2) {
+			canDouble = 1;
+			if (playerHand.isPair()) {
+				handClass = PAIR;
+				total = Card.codeBlackjackValue(playerHand.getCardCode(0));
+				// Aces that come from a split cannot be split again
+				if (playerHand.getCardValue(0) != 1 ||
+						!playerHand.isSplitFlag()) {
+					canSplit = 1;
+				}
+			} else if (playerHand.isSoft()) {
+				handClass = SOFT;
+			}
+		}
+		return index(handClass, total, upCard, canDouble, canSplit);
+	}
+
+	public static synchronized StrategyChart getDefault() {
+		// The chart in STRATEGY_FILE if that file is in the directory where
+		// the program runs, otherwise the built-in chart.  It is only
+		// read once.
+		if (defaultChart == null) {
+			File chartFile = new File(System.getProperty("user.dir"),
+					Settings.STRATEGY_FILE);
+			try {
+				if (chartFile.isFile()) {
+					System.out.println("Strategy chart: " + chartFile);
+					defaultChart = load(new FileInputStream(chartFile));
+				} else {
+					defaultChart = load(StrategyChart.class
+							.getResourceAsStream(BUILT_IN_CHART));
+				}
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return defaultChart;
+	}
+
+	public static StrategyChart load(InputStream in) throws IOException {
+		// Read a chart from a stream, which is closed afterwards
+		if (in == null) {
+			throw new IOException("Strategy chart not found");
+		}
+		try {
+			return load(new InputStreamReader(in, "US-ASCII"));
+		} finally {
+			in.close();
+		}
+	}
+
+	public static StrategyChart load(Reader in) throws IOException {
+		// Read a chart in the layout of basic-strategy.txt.  Lines
+		// starting with # are comments.
+		String[][][] chart = new String[3][TOTALS][];
+		BufferedReader reader = new BufferedReader(in);
+		int handClass = -1;
+		int lineNum = 0;
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lineNum++;
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			// A new table starts
+			if (line.equalsIgnoreCase("[hard]")) {
+				handClass = HARD; continue;
+			} else if (line.equalsIgnoreCase("[soft]")) {
+				handClass = SOFT; continue;
+			} else if (line.equalsIgnoreCase("[pair]")) {
+				handClass = PAIR; continue;
+			} else if (handClass < 0) {
+				throw chartError(lineNum, "expected [hard], [soft] or [pair]");
+			}
+
+			// A row: the total (or pair value), then one move per up card
+			String[] fields = line.split("\\s+");
+			if (fields.length != 11) {
+				throw chartError(lineNum, "expected a total and 10 moves");
+			}
+			int total = rowTotal(handClass, fields[0], lineNum);
+			String[] row = new String[UP_CARDS];
+			for (int i = 1; i <= 10; i++) {
+				String move = fields[i];
+				if (!move.equals("H") && !move.equals("S") &&
+						!move.equals("D") && !move.equals("Ds") &&
+						!(move.equals("P") && handClass == PAIR)) {
+					throw chartError(lineNum, "unknown move " + move);
+				}
+				// Columns 1 to 9 are up cards 2 to 10, column 10 is the ace
+				row[i + 1] = move;
+			}
+			chart[handClass][total] = row;
+		}
+		return new StrategyChart(chart);
+	}
+
+	private static int rowTotal(int handClass, String key, int lineNum)
+			throws IOException {
+		// Hand total for the first field of a row.  Pair rows give the
+		// value of one card of the pair (A for aces).
+		int value;
+		if (key.equalsIgnoreCase("A")) {
+			value = 1;
+		} else {
+			try {
+				value = Integer.parseInt(key);
+			} catch (NumberFormatException e) {
+				throw chartError(lineNum, "bad total " + key);
+			}
+		}
+		if (handClass == PAIR) {
+			if (value < 1 || value > 10) {
+				throw chartError(lineNum, "bad pair " + key);
+			}
+			return (value == 1) ? 11 : value;
+		}
+		if (value < 4 || value > 21) {
+			throw chartError(lineNum, "bad total " + key);
+		}
+		return value;
+	}
+
+	private static IOException chartError(int lineNum, String message) {
+		return new IOException("Strategy chart, line " + lineNum + ": " +
+				message);
+	}
+}